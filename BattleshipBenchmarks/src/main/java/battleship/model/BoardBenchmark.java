@@ -0,0 +1,259 @@
+package battleship.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of the hot paths of {@link Board}, {@link Place} and
+ * {@link Ship} over a range of board sizes and fleet densities. Run with
+ * <code>-prof gc</code> to see allocation rates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class BoardBenchmark {
+
+    @Param({ "10", "30", "100" })
+    public int size;
+
+    /** Fraction of the places covered by ships. */
+    @Param({ "0.17", "0.3" })
+    public double fill;
+
+    /** Board with a fixed layout, half of its places shot. */
+    private Board board;
+
+    /** Layout of the ships of the board. */
+    private int[] layout;
+
+    /** Places of the board in a fixed random shooting order. */
+    private Place[] order;
+
+    /** Random coordinates for lookups and placement attempts. */
+    private int[] coords;
+    private int next;
+
+    /** Ship partly hit, and ship sunk, in the half-played board. */
+    private Ship afloat;
+    private Ship sunk;
+
+    private Random random;
+
+    private FleetPlacer placer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        random = new Random(42);
+        placer = new FleetPlacer(random);
+        board = new Board(size, Fleets.fleet(size, fill));
+        layout = Fleets.placeRandomly(board, random);
+        List<Place> places = new ArrayList<>();
+        board.places().forEach(places::add);
+        Collections.shuffle(places, random);
+        order = places.toArray(new Place[0]);
+        coords = new int[1 << 12];
+        for (int i = 0; i < coords.length; i++) {
+            coords[i] = random.nextInt(size) + 1;
+        }
+        halfPlay();
+    }
+
+    /** Reset the board, place the fixed layout and shoot half of it. */
+    private void halfPlay() {
+        board.reset();
+        Fleets.place(board, layout);
+        for (int i = 0; i < order.length / 2; i++) {
+            order[i].hit();
+        }
+        afloat = null;
+        sunk = null;
+        for (Ship ship : board.ships()) {
+            if (ship.isSunk()) {
+                sunk = ship;
+            } else {
+                afloat = ship;
+            }
+        }
+    }
+
+    private int nextCoord() {
+        next = (next + 1) & (coords.length - 1);
+        return coords[next];
+    }
+
+    @Benchmark
+    public Place at() {
+        return board.at(nextCoord(), nextCoord());
+    }
+
+    /** One random placement attempt of the last ship of the fleet on
+     * a board holding the rest of the fleet, undone if it succeeds. */
+    @Benchmark
+    public boolean placeShip(PlaceState state) {
+        boolean placed = state.board.placeShip(state.probe,
+                nextCoord(), nextCoord(), (next & 1) == 0);
+        if (placed) {
+            state.probe.removePlaces();
+        }
+        return placed;
+    }
+
+    /** State for placement attempts: all ships but the last are placed. */
+    @State(Scope.Thread)
+    public static class PlaceState {
+        Board board;
+        Ship probe;
+
+        @Setup(Level.Trial)
+        public void setUp(BoardBenchmark bench) {
+            Random random = new Random(3);
+            board = new Board(bench.size, Fleets.fleet(bench.size, bench.fill));
+            int size = bench.size;
+            for (Ship ship : board.ships()) {
+                probe = ship;
+            }
+            for (Ship ship : board.ships()) {
+                if (ship != probe) {
+                    while (!board.placeShip(ship, random.nextInt(size) + 1,
+                            random.nextInt(size) + 1, random.nextBoolean()));
+                }
+            }
+        }
+    }
+
+    /** Shoot the next place of the shooting order through Place.hit,
+     * which dispatches to Board.hit and the listeners. Once every place
+     * is shot the board is reset and the layout placed again; that cost
+     * is amortized over size * size shots. */
+    @Benchmark
+    public boolean hit(HitState state) {
+        if (state.cursor == order.length) {
+            state.board.reset();
+            Fleets.place(state.board, layout);
+            state.cursor = 0;
+        }
+        Place place = state.places[state.cursor++];
+        place.hit();
+        return place.isHitShip();
+    }
+
+    /** State for shooting: a fresh board with the fixed layout and the
+     * given number of listeners, which only shots notify. */
+    @State(Scope.Thread)
+    public static class HitState {
+        /** Number of board change listeners registered. */
+        @Param({ "1", "4" })
+        public int listeners;
+
+        Board board;
+        Place[] places;
+        int cursor;
+
+        @Setup(Level.Trial)
+        public void setUp(BoardBenchmark bench) {
+            board = new Board(bench.size, Fleets.fleet(bench.size, bench.fill));
+            for (int i = 0; i < listeners; i++) {
+                board.addBoardChangeListener(new Board.BoardChangeAdapter());
+            }
+            Fleets.place(board, bench.layout);
+            places = new Place[bench.order.length];
+            for (int i = 0; i < places.length; i++) {
+                places[i] = board.at(bench.order[i].getX(), bench.order[i].getY());
+            }
+        }
+    }
+
+    /** Reset and place the whole fleet at random, as placeShips does. */
+    @Benchmark
+    public int placeFleet() {
+        board.reset();
+        placer.place(board);
+        return placer.attempts();
+    }
+
+    /** Play a whole game: reset, place the fixed layout and shoot the
+     * places in a random order until the game is over, checking for game
+     * over before each shot as BoardPanel.placeClicked does. */
+    @Benchmark
+    public int playOut(HitState state) {
+        Board board = state.board;
+        board.reset();
+        Fleets.place(board, layout);
+        for (Place p : state.places) {
+            if (board.isGameOver()) {
+                break;
+            }
+            p.hit();
+        }
+        state.cursor = state.places.length;
+        return board.numOfShots();
+    }
+
+    @Benchmark
+    public boolean isGameOver() {
+        return board.isGameOver();
+    }
+
+    @Benchmark
+    public void isSunk(Blackhole bh) {
+        bh.consume(afloat != null && afloat.isSunk());
+        bh.consume(sunk != null && sunk.isSunk());
+    }
+
+    /** State for resetting: a board with a fixed layout and a few
+     * places to shoot before each reset. */
+    @State(Scope.Thread)
+    public static class ResetState {
+        /** Places shot before each reset. */
+        static final int SHOTS = 16;
+
+        Board board;
+        int[] layout;
+        Place[] places;
+
+        @Setup(Level.Trial)
+        public void setUp(BoardBenchmark bench) {
+            board = new Board(bench.size, Fleets.fleet(bench.size, bench.fill));
+            layout = Fleets.placeRandomly(board, new Random(7));
+            places = new Place[Math.min(SHOTS, bench.order.length)];
+            for (int i = 0; i < places.length; i++) {
+                places[i] = board.at(bench.order[i].getX(), bench.order[i].getY());
+            }
+        }
+    }
+
+    /** Dirty the board and reset it: place the fixed layout, shoot a few
+     * places and reset. The board is dirtied here rather than in a
+     * per-invocation setup, whose timer overhead would swamp a reset of
+     * a small board; compare with hit for the share of the shots. */
+    @Benchmark
+    public Board reset(ResetState state) {
+        Board board = state.board;
+        Fleets.place(board, state.layout);
+        for (Place p : state.places) {
+            p.hit();
+        }
+        board.reset();
+        return board;
+    }
+}
@@ -0,0 +1,83 @@
+package battleship.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Fleets and layouts shared by the benchmarks. A fleet is built from the
+ * default ship lengths (5, 4, 3, 3, 2), repeated and stretched until the
+ * ships cover about the requested fraction of the board.
+ */
+public final class Fleets {
+
+    /** Default ship lengths of a board. */
+    private static final int[] LENGTHS = { 5, 4, 3, 3, 2 };
+
+    private Fleets() {
+    }
+
+    /**
+     * Create a fleet covering about the given fraction of a board.
+     *
+     * @param size Width and height of the board
+     * @param fill Fraction of the places to be covered by ships
+     * @return Ships of the fleet
+     */
+    public static List<Ship> fleet(int size, double fill) {
+        int target = Math.max(17, (int) (fill * size * size));
+        int groups = Math.min(Grid.MAX_SHIPS / LENGTHS.length,
+                (int) Math.ceil(target / 17.0));
+        int scale = Math.max(1, (int) Math.round(target / (17.0 * groups)));
+        List<Ship> ships = new ArrayList<>();
+        for (int g = 0; g < groups; g++) {
+            for (int len : LENGTHS) {
+                ships.add(new Ship("Ship " + ships.size(),
+                        Math.min(size, len * scale)));
+            }
+        }
+        return ships;
+    }
+
+    /**
+     * Place the ships of the given board at random and return the
+     * placements as (x, y, dir) triples, so that the same layout can be
+     * placed again after a reset.
+     *
+     * @param board Board whose ships are to be placed
+     * @param random Source of random placements
+     * @return Placements, three ints per ship; dir is 1 for horizontal
+     */
+    public static int[] placeRandomly(Board board, Random random) {
+        List<Integer> layout = new ArrayList<>();
+        int size = board.size();
+        for (Ship ship : board.ships()) {
+            int x, y;
+            boolean dir;
+            do {
+                x = random.nextInt(size) + 1;
+                y = random.nextInt(size) + 1;
+                dir = random.nextBoolean();
+            } while (!board.placeShip(ship, x, y, dir));
+            layout.add(x);
+            layout.add(y);
+            layout.add(dir ? 1 : 0);
+        }
+        return layout.stream().mapToInt(i -> i).toArray();
+    }
+
+    /**
+     * Place the ships of the given board according to a layout returned
+     * by {@link #placeRandomly}.
+     *
+     * @param board Board whose ships are to be placed
+     * @param layout Placements, three ints per ship
+     */
+    public static void place(Board board, int[] layout) {
+        int i = 0;
+        for (Ship ship : board.ships()) {
+            board.placeShip(ship, layout[i], layout[i + 1], layout[i + 2] == 1);
+            i += 3;
+        }
+    }
+}
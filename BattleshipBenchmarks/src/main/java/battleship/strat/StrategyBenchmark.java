@@ -0,0 +1,131 @@
+package battleship.strat;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import battleship.model.Board;
+import battleship.model.Fleets;
+import battleship.model.Place;
+
+/**
+ * Benchmarks of the {@link SmartStrategy} calls made by
+ * <code>AddStrategy.respondHit</code>, over a range of board sizes and
+ * fleet densities. Run with <code>-prof gc</code> to see allocation
+ * rates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class StrategyBenchmark {
+
+    @Param({ "10", "30", "100" })
+    public int size;
+
+    /** Fraction of the places covered by ships. */
+    @Param({ "0.17", "0.3" })
+    public double fill;
+
+    /** Board the strategy shoots at, with a fixed layout. */
+    private Board board;
+
+    private int[] layout;
+
+    private Random random;
+
+    /** Strategy in the middle of a game against the board. */
+    private SmartStrategy strat;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        random = new Random(42);
+        board = new Board(size, Fleets.fleet(size, fill));
+        layout = Fleets.placeRandomly(board, random);
+        newGame();
+    }
+
+    private void newGame() {
+        board.reset();
+        Fleets.place(board, layout);
+        strat = new SmartStrategy(size, random);
+    }
+
+    /** Make one move the way respondHit does: checkShot, hit the board,
+     * doShot, then notifySunk or notifyHit. A new game is started once
+     * the board is cleared; that cost is amortized over the game. */
+    @Benchmark
+    public int move() {
+        if (board.isGameOver()) {
+            newGame();
+        }
+        int shot = strat.checkShot();
+        Place place = board.at(shot / size + 1, shot % size + 1);
+        board.hit(place);
+        strat.doShot();
+        if (place.isHitShip()) {
+            if (place.ship().isSunk()) {
+                strat.notifySunk();
+            } else {
+                strat.notifyHit(shot);
+            }
+        }
+        return shot;
+    }
+
+    /** Peek the next shot; repeated calls return the same shot. */
+    @Benchmark
+    public int checkShot() {
+        return strat.checkShot();
+    }
+
+    /** State for timing checkShot and doShot together on a strategy
+     * that is replaced once every place was shot. */
+    @State(Scope.Thread)
+    public static class ShotState {
+        SmartStrategy strat;
+        int size;
+        int shots;
+
+        @Setup(Level.Trial)
+        public void setUp(StrategyBenchmark bench) {
+            size = bench.size;
+            strat = new SmartStrategy(size, new Random(7));
+        }
+    }
+
+    @Benchmark
+    public int doShot(ShotState state) {
+        if (state.shots == state.size * state.size) {
+            state.strat = new SmartStrategy(state.size, new Random(7));
+            state.shots = 0;
+        }
+        state.strat.checkShot();
+        state.shots++;
+        return state.strat.doShot();
+    }
+
+    /** Push the neighbours of a hit, then clear them as a sink does. */
+    @Benchmark
+    public int notifyHit(ShotState state) {
+        int place = (state.size / 2) * state.size + state.size / 2;
+        state.strat.notifyHit(place);
+        int top = state.strat.top;
+        state.strat.notifySunk();
+        return top;
+    }
+}
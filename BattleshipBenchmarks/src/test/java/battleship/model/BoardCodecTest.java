@@ -0,0 +1,130 @@
+package battleship.model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link BoardCodec}: snapshots read back into the boards they
+ * were written from, and malformed snapshots are refused before a board
+ * is allocated.
+ */
+public class BoardCodecTest {
+
+    /** Return a board of the given size with its fleet placed and the
+     * given number of random places shot. */
+    static Board played(int size, int shots, long seed) {
+        Random random = new Random(seed);
+        Board board = new Board(size);
+        new FleetPlacer(random).place(board);
+        while (board.numOfShots() < shots && !board.isGameOver()) {
+            Place place = board.at(random.nextInt(size) + 1,
+                    random.nextInt(size) + 1);
+            if (!place.isHit()) {
+                place.hit();
+            }
+        }
+        return board;
+    }
+
+    /** Assert that the two boards have the same places shot, the same
+     * ships at the same places, and the same counts. */
+    static void assertSameState(Board expected, Board actual) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.numOfShots(), actual.numOfShots());
+        assertEquals(expected.isGameOver(), actual.isGameOver());
+        assertEquals(expected.zobrist(), actual.zobrist());
+        for (int y = 1; y <= expected.size(); y++) {
+            for (int x = 1; x <= expected.size(); x++) {
+                Place e = expected.at(x, y);
+                Place a = actual.at(x, y);
+                assertEquals(e.isHit(), a.isHit());
+                assertEquals(e.hasShip(), a.hasShip());
+                if (e.hasShip()) {
+                    assertEquals(e.ship().name(), a.ship().name());
+                    assertEquals(e.ship().isSunk(), a.ship().isSunk());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void roundTripRestoresTheBoard() {
+        for (int size : new int[] { 5, 10, 13, 64 }) {
+            for (int shots : new int[] { 0, 1, size * size / 2, size * size }) {
+                Board board = played(size, shots, 31 * size + shots);
+                byte[] snapshot = BoardCodec.encode(board);
+                assertEquals(BoardCodec.encodedSize(board), snapshot.length);
+                Board copy = BoardCodec.read(ByteBuffer.wrap(snapshot));
+                assertSameState(board, copy);
+                assertArrayEquals(snapshot, BoardCodec.encode(copy));
+            }
+        }
+    }
+
+    @Test
+    public void snapshotsFollowEachOtherInABuffer() {
+        Board first = played(10, 30, 1);
+        Board second = played(12, 70, 2);
+        ByteBuffer buffer = ByteBuffer.allocate(
+                BoardCodec.encodedSize(first) + BoardCodec.encodedSize(second));
+        BoardCodec.write(first, buffer);
+        BoardCodec.write(second, buffer);
+        assertFalse(buffer.hasRemaining());
+        buffer.flip();
+        assertSameState(first, BoardCodec.read(buffer));
+        Board reused = new Board(12);
+        BoardCodec.read(buffer, reused);
+        assertSameState(second, reused);
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void readIntoABoardReplacesItsState() {
+        Board board = played(10, 40, 3);
+        Board target = played(10, 90, 4);
+        BoardCodec.read(ByteBuffer.wrap(BoardCodec.encode(board)), target);
+        assertSameState(board, target);
+        assertEquals(target.computeZobrist(), target.zobrist());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sizeAboveTheLimitIsRefused() {
+        // version, size 2^24 - 1, no shots, 5 ships
+        BoardCodec.read(ByteBuffer.wrap(new byte[] {
+            1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07, 0, 5 }));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sizeZeroIsRefused() {
+        BoardCodec.read(ByteBuffer.wrap(new byte[] { 1, 0, 0, 0 }));
+    }
+
+    @Test(expected = BufferUnderflowException.class)
+    public void bitmapShorterThanTheSizeIsRefused() {
+        // version, size 1024, no shots, 5 ships and a few bytes only
+        BoardCodec.read(ByteBuffer.wrap(new byte[] {
+            1, (byte) 0x80, 0x08, 0, 5, 1, 2, 3 }));
+    }
+
+    @Test
+    public void truncatedSnapshotIsRefused() {
+        byte[] snapshot = BoardCodec.encode(played(10, 20, 5));
+        for (int length = 1; length < snapshot.length; length++) {
+            ByteBuffer buffer = ByteBuffer.wrap(snapshot, 0, length);
+            try {
+                BoardCodec.read(buffer);
+                fail("read from " + length + " bytes");
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package battleship.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link Board}: a ship placed on places already hit is sunk
+ * and counted as sunk, and removing it uncounts it, so the end of the
+ * game and the Zobrist hash stay exact.
+ */
+public class BoardTest {
+
+    /** Shoot two places, place the only ship of the board on them, then
+     * remove it and sink it elsewhere. */
+    private static void placeOnHitsAndRemove(Board board) {
+        Ship ship = board.ship("Boat");
+        board.at(1, 1).hit();
+        board.at(2, 1).hit();
+        assertFalse(board.isGameOver());
+
+        assertTrue(board.placeShip(ship, 1, 1, true));
+        assertTrue(ship.isSunk());
+        assertTrue(board.isGameOver());
+        assertEquals(board.computeZobrist(), board.zobrist());
+
+        ship.removePlaces();
+        assertFalse(board.isGameOver());
+        assertEquals(board.computeZobrist(), board.zobrist());
+
+        assertTrue(board.placeShip(ship, 3, 3, false));
+        board.hit(board.at(3, 3));
+        assertFalse(board.isGameOver());
+        board.hit(board.at(3, 4));
+        assertTrue(board.isGameOver());
+        assertEquals(board.computeZobrist(), board.zobrist());
+    }
+
+    @Test
+    public void shipPlacedOnHitsIsCountedSunk() {
+        placeOnHitsAndRemove(
+                new Board(5, Arrays.asList(new Ship("Boat", 2))));
+    }
+
+    @Test
+    public void shipPlacedOnHitsIsCountedSunkConcurrently() {
+        placeOnHitsAndRemove(
+                new ConcurrentBoard(5, Arrays.asList(new Ship("Boat", 2))));
+    }
+
+    @Test
+    public void restoredShipOnHitsIsCountedOnce() {
+        Board board = new Board(5, Arrays.asList(new Ship("Boat", 2),
+                new Ship("Raft", 1)));
+        board.at(1, 1).hit();
+        board.at(2, 1).hit();
+        board.placeShip(board.ship("Boat"), 1, 1, true);
+        board.placeShip(board.ship("Raft"), 5, 5, true);
+
+        Board copy = new Board(5, Arrays.asList(new Ship("Boat", 2),
+                new Ship("Raft", 1)));
+        BoardCodec.read(ByteBuffer.wrap(BoardCodec.encode(board)), copy);
+        assertFalse(copy.isGameOver());
+        copy.hit(copy.at(5, 5));
+        assertTrue(copy.isGameOver());
+    }
+}
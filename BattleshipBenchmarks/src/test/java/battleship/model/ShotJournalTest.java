@@ -0,0 +1,150 @@
+package battleship.model;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of {@link ShotJournal}: games appended to a journal are listed
+ * and replayed at any shot, also after the journal is reopened, spans
+ * several mapped regions, or was cut short by a crash in the middle of
+ * a record.
+ */
+public class ShotJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Snapshots of the boards of the games played, after every shot,
+     * indexed by game and then by number of shots. */
+    private final List<List<byte[]>> played = new ArrayList<>();
+
+    /** Play the given number of games on boards of the given size,
+     * recording them in the given journal, each up to the given number
+     * of shots or until it is over. */
+    private void play(ShotJournal journal, int games, int size, int shots,
+            Random random) {
+        Board board = new Board(size);
+        FleetPlacer placer = new FleetPlacer(random);
+        for (int g = 0; g < games; g++) {
+            board.reset();
+            placer.place(board);
+            journal.startGame(board);
+            List<byte[]> states = new ArrayList<>();
+            states.add(BoardCodec.encode(board));
+            while (board.numOfShots() < shots && !board.isGameOver()) {
+                Place place = board.at(random.nextInt(size) + 1,
+                        random.nextInt(size) + 1);
+                if (!place.isHit()) {
+                    place.hit();
+                    states.add(BoardCodec.encode(board));
+                }
+            }
+            played.add(states);
+        }
+    }
+
+    /** Assert that the journal holds the games played, and replays each
+     * of them to the same boards at the given shots. */
+    private void assertReplays(Path file, int... shots) throws IOException {
+        try (ShotJournal.Reader reader = new ShotJournal.Reader(file)) {
+            assertEquals(played.size(), reader.games());
+            for (int g = 0; g < played.size(); g++) {
+                List<byte[]> states = played.get(g);
+                assertEquals(states.size() - 1, reader.shots(g));
+                for (int shot : shots) {
+                    int n = shot < 0 ? states.size() - 1
+                            : Math.min(shot, states.size() - 1);
+                    BoardCodecTest.assertSameState(
+                            BoardCodec.read(ByteBuffer.wrap(states.get(n))),
+                            reader.board(g, n));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void gamesReplayAtAnyShot() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("games.journal");
+        try (ShotJournal journal = new ShotJournal(file)) {
+            play(journal, 5, 10, 100, new Random(1));
+        }
+        assertReplays(file, 0, 1, 17, -1);
+        try (ShotJournal.Reader reader = new ShotJournal.Reader(file)) {
+            Board board = reader.board(2, 5);
+            int place = reader.place(2, 5);
+            Place next = board.at(place % 10 + 1, place / 10 + 1);
+            assertEquals(false, next.isHit());
+            assertEquals(6, reader.numOfShots(2, 5));
+        }
+    }
+
+    @Test
+    public void reopenedJournalAppends() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("games.journal");
+        Random random = new Random(2);
+        for (int i = 0; i < 3; i++) {
+            try (ShotJournal journal = new ShotJournal(file)) {
+                play(journal, 2, 8, 30, random);
+            }
+        }
+        assertReplays(file, 0, 10, -1);
+    }
+
+    @Test
+    public void journalSpansSeveralRegions() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("games.journal");
+        Random random = new Random(3);
+        try (ShotJournal journal = new ShotJournal(file)) {
+            // about 2.5 regions of shot records
+            int games = 5 * ShotJournal.REGION_SIZE
+                    / (2 * 100 * ShotJournal.SHOT_BYTES);
+            play(journal, games, 10, 100, random);
+        }
+        assertReplays(file, -1);
+        try (ShotJournal journal = new ShotJournal(file)) {
+            play(journal, 1, 10, 50, random);
+        }
+        assertReplays(file, 25, -1);
+    }
+
+    @Test
+    public void recordTornByACrashIsIgnored() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("games.journal");
+        Random random = new Random(4);
+        try (ShotJournal journal = new ShotJournal(file)) {
+            play(journal, 2, 10, 40, random);
+        }
+        long end;
+        try (ShotJournal.Reader reader = new ShotJournal.Reader(file)) {
+            end = reader.end;
+        }
+        // the body of a shot record and its end tag are written, and the
+        // process dies before the tag of the record
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(end + 1);
+            raf.write(ShotJournal.HIT);
+            raf.writeInt(42);
+            raf.writeInt(41);
+            raf.writeLong(System.currentTimeMillis());
+            raf.write(ShotJournal.END);
+        }
+        assertReplays(file, 0, -1);
+
+        // appending again overwrites the torn record
+        try (ShotJournal journal = new ShotJournal(file)) {
+            play(journal, 1, 10, 20, random);
+        }
+        assertReplays(file, 0, 10, -1);
+    }
+}
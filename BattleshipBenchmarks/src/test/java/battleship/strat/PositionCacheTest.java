@@ -0,0 +1,185 @@
+package battleship.strat;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link PositionCache}: positions put are got back, a full
+ * set evicts the entries not used since the CLOCK hand last passed them,
+ * and a cache sized in bytes stays within its budget.
+ */
+public class PositionCacheTest {
+
+    /** Probabilities of a position of the given number of places,
+     * distinct for every key. */
+    private static float[] probabilities(long key, int places) {
+        float[] probabilities = new float[places];
+        for (int i = 0; i < places; i++) {
+            probabilities[i] = (key * 31 + i) % 1000 / 1000f;
+        }
+        return probabilities;
+    }
+
+    /** Return the given number of keys that fall in the given set. */
+    private static long[] keysOfSet(PositionCache cache, int set, int count) {
+        long[] keys = new long[count];
+        int found = 0;
+        for (long key = 1; found < count; key++) {
+            if (cache.set(key) == set) {
+                keys[found++] = key;
+            }
+        }
+        return keys;
+    }
+
+    @Test
+    public void positionsPutAreGot() {
+        PositionCache cache = new PositionCache(100, 10);
+        float[] into = new float[100];
+        assertFalse(cache.get(42, into));
+        cache.put(42, probabilities(42, 100));
+        assertTrue(cache.get(42, into));
+        assertArrayEquals(probabilities(42, 100), into, 0f);
+
+        // putting a cached position again replaces its probabilities
+        cache.put(42, probabilities(43, 100));
+        assertTrue(cache.get(42, into));
+        assertArrayEquals(probabilities(43, 100), into, 0f);
+        assertEquals(2, cache.hits());
+        assertEquals(1, cache.misses());
+    }
+
+    @Test
+    public void capacityIsRoundedUpToPowerOfTwoSets() {
+        assertEquals(PositionCache.WAYS, new PositionCache(1, 10).capacity());
+        assertEquals(4 * PositionCache.WAYS,
+                new PositionCache(3 * PositionCache.WAYS + 1, 10).capacity());
+    }
+
+    @Test
+    public void fullSetEvictsUnreferencedEntry() {
+        int ways = PositionCache.WAYS;
+        PositionCache cache = new PositionCache(4 * ways, 5);
+        long[] keys = keysOfSet(cache, 2, ways + 1);
+        float[] into = new float[25];
+        for (int i = 0; i < ways; i++) {
+            cache.put(keys[i], probabilities(keys[i], 25));
+        }
+        // use the first half of the set since it was filled
+        for (int i = 0; i < ways / 2; i++) {
+            assertTrue(cache.get(keys[i], into));
+        }
+        cache.put(keys[ways], probabilities(keys[ways], 25));
+
+        // the hand passes the used entries and evicts the first unused one
+        assertFalse(cache.get(keys[ways / 2], into));
+        for (int i = 0; i <= ways; i++) {
+            if (i != ways / 2) {
+                assertTrue("key " + i, cache.get(keys[i], into));
+                assertArrayEquals(probabilities(keys[i], 25), into, 0f);
+            }
+        }
+    }
+
+    @Test
+    public void setsEvictIndependently() {
+        int ways = PositionCache.WAYS;
+        PositionCache cache = new PositionCache(2 * ways, 5);
+        long[] full = keysOfSet(cache, 0, 2 * ways);
+        long[] other = keysOfSet(cache, 1, ways);
+        for (long key : other) {
+            cache.put(key, probabilities(key, 25));
+        }
+        for (long key : full) {
+            cache.put(key, probabilities(key, 25));
+        }
+        float[] into = new float[25];
+        for (long key : other) {
+            assertTrue(cache.get(key, into));
+        }
+    }
+
+    @Test
+    public void clearForgetsAllPositions() {
+        PositionCache cache = new PositionCache(64, 6);
+        for (long key = 1; key <= 32; key++) {
+            cache.put(key, probabilities(key, 36));
+        }
+        cache.clear();
+        float[] into = new float[36];
+        for (long key = 1; key <= 32; key++) {
+            assertFalse(cache.get(key, into));
+        }
+    }
+
+    @Test
+    public void ofBytesStaysWithinBudget() {
+        for (int size : new int[] { 5, 10, 17, 40, 100 }) {
+            for (long budget : new long[] { 1 << 10, 1 << 16, 1 << 20,
+                    10_000_000L, 64L << 20 }) {
+                PositionCache cache = PositionCache.ofBytes(budget, size);
+                long set = PositionCache.bytesOf(1, size * size);
+                String what = "size " + size + ", budget " + budget;
+                assertTrue(what, cache.capacity() >= PositionCache.WAYS);
+                if (budget >= set) {
+                    assertTrue(what, cache.bytes() <= budget);
+                }
+                assertEquals(what, PositionCache.bytesOf(
+                        cache.capacity() / PositionCache.WAYS, size * size),
+                        cache.bytes());
+            }
+        }
+    }
+
+    @Test
+    public void ofBytesTakesLargestFittingPowerOfTwo() {
+        long set = PositionCache.bytesOf(1, 100);
+        PositionCache cache = PositionCache.ofBytes(8 * set + set / 2, 10);
+        assertEquals(8 * PositionCache.WAYS, cache.capacity());
+        assertEquals(8 * set, cache.bytes());
+        cache = PositionCache.ofBytes(set - 1, 10);
+        assertEquals(PositionCache.WAYS, cache.capacity());
+    }
+
+    /** An observation of sunk places and of the given ships afloat. */
+    private static Observation sunk(int[] places, int... afloat) {
+        return new Observation() {
+            public int size() {
+                return 10;
+            }
+            public int numOfShots() {
+                return places.length;
+            }
+            public int state(int place) {
+                for (int p : places) {
+                    if (p == place) {
+                        return SUNK;
+                    }
+                }
+                return UNKNOWN;
+            }
+            public int[] remainingShips() {
+                return afloat;
+            }
+        };
+    }
+
+    @Test
+    public void keysTellFleetsAfloatApart() {
+        // the same five places sunk by a 3 and a 2, or by the 5
+        int[] places = { 0, 1, 2, 3, 4 };
+        long threeAndTwo = EndgameSolver.key(sunk(places, 5, 4));
+        long five = EndgameSolver.key(sunk(places, 4, 3, 3, 2));
+        assertTrue(threeAndTwo != five);
+        assertEquals(threeAndTwo, EndgameSolver.key(sunk(places, 4, 5)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cacheOverArrayLimitIsRefused() {
+        new PositionCache(Integer.MAX_VALUE / 2, 100);
+    }
+}
@@ -2,20 +2,23 @@ package battleship;
 
 import java.awt.BorderLayout;
 import java.awt.Dimension;
+import java.awt.EventQueue;
 import java.awt.FlowLayout;
 import java.awt.event.ActionEvent;
 import java.util.Random;
 
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
+import javax.swing.JComponent;
 import javax.swing.JDialog;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JScrollPane;
 
 import battleship.model.Board;
-import battleship.model.Ship;
+import battleship.model.FleetPlacer;
 import battleship.model.Place;
 import battleship.BoardPanel;
 
@@ -29,7 +32,7 @@ public class BattleshipDialog extends JDialog {
     private final static Dimension DEFAULT_DIMENSION = new Dimension(335, 440);
 
     /** To place ships randomly. */
-    private final static Random random = new Random();
+    private final static FleetPlacer placer = new FleetPlacer(new Random());
 
     /** To start a new game. */
     private final JButton playButton = new JButton("Play");
@@ -47,9 +50,16 @@ public class BattleshipDialog extends JDialog {
     
     /** Create a battleship dialog of the given dimension. */
     public BattleshipDialog(Dimension dim) {
+        this(dim, 10);
+    }
+
+    /** Create a battleship dialog of the given dimension to play on a
+     * board of the given size. */
+    public BattleshipDialog(Dimension dim, int boardSize) {
         super((JFrame) null, "Battleship");
-        board = new Board(10);
-        board.addBoardChangeListener(createBoardChangeListener());
+        board = new Board(boardSize);
+        board.addBoardChangeListener(createBoardChangeListener(),
+                EventQueue::invokeLater, true);
         placeShips();
         configureGui();
         setSize(dim);
@@ -79,24 +89,17 @@ public class BattleshipDialog extends JDialog {
         return content;
     }
     
-    /** Create a panel for a game board. */
-    private JPanel makeBoardPane() {
-    	return new BoardPanel(board);
+    /** Create a panel for a game board. The panel scrolls when the
+     * board does not fit in the dialog; Ctrl+mouse wheel zooms it. */
+    private JComponent makeBoardPane() {
+    	JScrollPane pane = new JScrollPane(new BoardPanel(board));
+    	pane.setBorder(BorderFactory.createEmptyBorder());
+    	return pane;
     }
     
     /** Place ships randomly. */
     private void placeShips() {
-        int size = board.size();
-        for (Ship ship : board.ships()) {
-            int i = 0;
-            int j = 0;
-            boolean dir = false;
-            do {
-                i = random.nextInt(size) + 1;
-                j = random.nextInt(size) + 1;
-                dir = random.nextBoolean();
-            } while (!board.placeShip(ship, i, j, dir));
-        }
+        placer.place(board);
     }
     
     /** To be called when the play button is clicked. If the current play
@@ -130,7 +133,9 @@ public class BattleshipDialog extends JDialog {
     
     /** Create a listener to listen to board changes such as shots.
      * The created listener will update the number of shots and
-     * congratulate when the game is over. */
+     * congratulate when the game is over. It is registered to be called
+     * later on the event dispatch thread, so a burst of shots updates
+     * the message bar once. */
     private Board.BoardChangeListener createBoardChangeListener() {
     	return new Board.BoardChangeAdapter() {
             public void hit(Place place, int numOfShots) {
@@ -149,7 +154,9 @@ public class BattleshipDialog extends JDialog {
     }
         
     public static void main(String[] args) {
-        BattleshipDialog dialog = new BattleshipDialog();
+        BattleshipDialog dialog = args.length > 0
+            ? new BattleshipDialog(DEFAULT_DIMENSION, Integer.parseInt(args[0]))
+            : new BattleshipDialog();
         dialog.setVisible(true);
         dialog.setDefaultCloseOperation(DISPOSE_ON_CLOSE);
     }
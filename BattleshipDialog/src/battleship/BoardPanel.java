@@ -3,13 +3,26 @@
 package battleship;
 
 import java.awt.Color;
+import java.awt.Dimension;
 import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.util.ArrayList;
+import java.util.List;
 import javax.swing.JPanel;
+import javax.swing.JViewport;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
 
 import battleship.model.Board;
 import battleship.model.Place;
+import battleship.model.Ship;
 import static battleship.Constants.*;
 
 /**
@@ -26,12 +39,38 @@ import static battleship.Constants.*;
  *  |       ...
  * </pre>
  *
+ * By default, the panel renders in cached mode: the background and grid
+ * lines are drawn once into an offscreen image, and a shot repaints only
+ * the places it changed, as reported by the board's change events.
+ *
+ * <p>The panel can be placed in a scroll pane and zoomed with
+ * Ctrl+mouse wheel. Only the places within the visible area are painted.
+ * When zoomed out so that a place is smaller than
+ * <code>DETAIL_SIZE</code> pixels, the board is drawn as tiles whose
+ * color shows the density of hits and misses in the places they cover.
+ *
+ * <p>Other views of the board, such as revealed ships, are drawn by
+ * overlays added with {@link #addOverlay(Overlay)}. The places and
+ * their overlays are drawn in a single pass over the visible places;
+ * when zoomed out, the overlays are drawn over the tiles, at every
+ * level of detail.
+ *
  * @see Board
  * @author Yoonsik Cheon
  * @version $Revision: 1.1 $
  */
 @SuppressWarnings("serial")
-public class BoardPanel extends JPanel {
+public class BoardPanel extends JPanel implements Scrollable {
+
+    /** Smallest place size in pixels at which places and grid lines are
+     * drawn one by one. */
+    public static final int DETAIL_SIZE = 4;
+
+    /** Place sizes in pixels that zooming steps through. */
+    private static final int[] ZOOM_SIZES = { 1, 2, 4, 8, 15, 30, 60 };
+
+    /** Largest width or height in pixels of the offscreen grid image. */
+    private static final int MAX_CACHED_EXTENT = 2048;
 
     /**
      * Height of the blank space above the board panel in pixel. It is 10 by
@@ -72,6 +111,29 @@ public class BoardPanel extends JPanel {
     /** Battleship board to be displayed by this panel. */
     protected final Board board;
 
+    /** Render in cached mode? I.e., draw the grid from an offscreen image
+     * and repaint only the places changed by a shot. */
+    protected boolean cachedRendering = true;
+
+    /** Offscreen image of the background and grid lines; null if not
+     * drawn yet or invalidated. */
+    private BufferedImage gridImage;
+
+    /** Place size and board color the grid image was drawn with. */
+    private int gridPlaceSize;
+    private Color gridBoardColor;
+
+    /** Level of detail. A square of <code>placeSize</code> pixels shows
+     * a tile of <code>2^lod x 2^lod</code> places; 0 when zoomed in. */
+    protected int lod;
+
+    /** Aggregated shots for drawing zoomed-out tiles; null until the
+     * panel is first zoomed out that far. */
+    private ShotDensity density;
+
+    /** Overlays drawn over the places, bottom one first. */
+    private final List<Overlay> overlays = new ArrayList<Overlay>();
+
     /** Create a new panel to display the given battleship board. */ 
     public BoardPanel(Board battleBoard) {
     	this(battleBoard, 
@@ -92,16 +154,87 @@ public class BoardPanel extends JPanel {
     	this.boardColor = boardColor;
     	this.hitColor = hitColor;
     	this.missColor = missColor;
-        addMouseListener(new MouseAdapter() {
+        MouseAdapter mouse = new MouseAdapter() {
             public void mouseClicked(MouseEvent e) {
+                if (lod > 0) {
+                    // a tile shows several places; zoom in on it first
+                    zoom(lod, e.getPoint());
+                    return;
+                }
                 Place p = locatePlace(e.getX(), e.getY());
                 if (p != null) {
                     placeClicked(p);
                 }
             }
+
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                if (e.isControlDown()) {
+                    zoom(-e.getWheelRotation(), e.getPoint());
+                } else if (getParent() != null) {
+                    // let the enclosing scroll pane scroll
+                    getParent().dispatchEvent(SwingUtilities.convertMouseEvent(
+                            BoardPanel.this, e, getParent()));
+                }
+            }
+        };
+        addMouseListener(mouse);
+        addMouseWheelListener(mouse);
+        board.addBoardChangeListener(new Board.BoardChangeAdapter() {
+            public void hit(Place place, int numOfShots) {
+                if (cachedRendering) {
+                    repaint(placeBounds(place));
+                } else {
+                    repaint();
+                }
+            }
+
+            public void shipSunk(Ship ship) {
+                if (cachedRendering) {
+                    repaintShip(ship);
+                }
+            }
         });
     }
+
+    /** Turn cached rendering on or off. When it is off, the whole panel,
+     * grid included, is redrawn after every shot.
+     *
+     * @param cached True for cached rendering; false otherwise
+     */
+    public void setCachedRendering(boolean cached) {
+        cachedRendering = cached;
+        gridImage = null;
+        repaint();
+    }
     
+    /** Add the given overlay on top of the overlays of this panel, and
+     * repaint the panel.
+     *
+     * @param overlay Overlay to be added
+     * @see Overlay
+     */
+    public void addOverlay(Overlay overlay) {
+        if (!overlays.contains(overlay)) {
+            overlays.add(overlay);
+            repaint();
+        }
+    }
+
+    /** Remove the given overlay from this panel, and repaint the panel.
+     *
+     * @param overlay Overlay to be removed
+     */
+    public void removeOverlay(Overlay overlay) {
+        if (overlays.remove(overlay)) {
+            repaint();
+        }
+    }
+
+    /** Is the given overlay drawn by this panel? */
+    public boolean hasOverlay(Overlay overlay) {
+        return overlays.contains(overlay);
+    }
+
     /** To be called when a place is clicked. If not all ships are sunk,
      * and the place is not already hit, hit the place. 
      * 
@@ -110,14 +243,146 @@ public class BoardPanel extends JPanel {
      */
     private void placeClicked(Place place) {
         if (!board.isGameOver() && !place.isHit()) {
-            place.hit();
-            repaint();                	
+            place.hit(); // repainted by the board change listener
+        }
+    }
+
+    /** Return the screen area of the given place, grid lines included.
+     * When zoomed out, this is the area of the tile covering the place. */
+    private Rectangle placeBounds(Place place) {
+        return new Rectangle(
+                leftMargin + ((place.getX() - 1) >> lod) * placeSize,
+                topMargin + ((place.getY() - 1) >> lod) * placeSize,
+                placeSize + 1, placeSize + 1);
+    }
+
+    /** Return the number of tiles per row or column at the current level
+     * of detail; the number of places when zoomed in. */
+    private int tiles() {
+        return (boardSize + (1 << lod) - 1) >> lod;
+    }
+
+    /** Is the board drawn place by place, with grid lines? */
+    private boolean isDetailed() {
+        return lod == 0 && placeSize >= DETAIL_SIZE;
+    }
+
+    /**
+     * Zoom in (positive steps) or out (negative steps), keeping the board
+     * position under the given point in place if the panel is in a
+     * scroll pane. Zooming steps through <code>ZOOM_SIZES</code> and then
+     * through levels of detail.
+     *
+     * @param steps Number of steps to zoom in; negative to zoom out
+     * @param anchor Point of this panel to keep in place, or null
+     */
+    public void zoom(int steps, Point anchor) {
+        // position of the anchor in places, before zooming
+        double px = anchor == null ? 0
+                : (double) (anchor.x - leftMargin) / placeSize * (1 << lod);
+        double py = anchor == null ? 0
+                : (double) (anchor.y - topMargin) / placeSize * (1 << lod);
+        for (; steps > 0; steps--) {
+            if (lod > 0) {
+                lod--;
+            } else {
+                placeSize = nextZoomSize(1);
+            }
+        }
+        for (; steps < 0; steps++) {
+            if (lod == 0 && placeSize > ZOOM_SIZES[0]) {
+                placeSize = nextZoomSize(-1);
+            } else if ((1 << lod) < boardSize) {
+                lod++;
+            }
+        }
+        Dimension size = getPreferredSize();
+        setSize(size);
+        if (anchor != null && getParent() instanceof JViewport) {
+            JViewport viewport = (JViewport) getParent();
+            Point view = viewport.getViewPosition();
+            int nx = leftMargin + (int) (px / (1 << lod) * placeSize);
+            int ny = topMargin + (int) (py / (1 << lod) * placeSize);
+            Dimension extent = viewport.getExtentSize();
+            view.x = Math.max(0, Math.min(size.width - extent.width,
+                    nx - (anchor.x - view.x)));
+            view.y = Math.max(0, Math.min(size.height - extent.height,
+                    ny - (anchor.y - view.y)));
+            viewport.setViewPosition(view);
+        }
+        revalidate();
+        repaint();
+    }
+
+    /** Return the zoom size next to the current place size in the given
+     * direction, or the current size at either end. */
+    private int nextZoomSize(int direction) {
+        int i = 0;
+        while (i < ZOOM_SIZES.length - 1 && ZOOM_SIZES[i] < placeSize) {
+            i++;
+        }
+        if (direction < 0 && ZOOM_SIZES[i] >= placeSize) {
+            return i > 0 ? ZOOM_SIZES[i - 1] : placeSize;
+        }
+        if (direction > 0 && ZOOM_SIZES[i] <= placeSize) {
+            return i < ZOOM_SIZES.length - 1 ? ZOOM_SIZES[i + 1] : placeSize;
+        }
+        return ZOOM_SIZES[i];
+    }
+
+    /** Return the size of the board in pixels at the current zoom. */
+    @Override
+    public Dimension getPreferredSize() {
+        int extent = tiles() * placeSize + 1;
+        return new Dimension(leftMargin + extent, topMargin + extent);
+    }
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        Dimension size = getPreferredSize();
+        return new Dimension(Math.min(size.width, 800),
+                Math.min(size.height, 800));
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visible,
+            int orientation, int direction) {
+        return placeSize;
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visible,
+            int orientation, int direction) {
+        return Math.max(placeSize, (orientation == SwingConstants.VERTICAL
+                ? visible.height : visible.width) - placeSize);
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return false;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return false;
+    }
+
+    /** Repaint the bounding rectangle of the places of the given ship. */
+    private void repaintShip(Ship ship) {
+        Rectangle bounds = null;
+        for (Place p: ship.places()) {
+            Rectangle r = placeBounds(p);
+            bounds = bounds == null ? r : bounds.union(r);
+        }
+        if (bounds != null) {
+            repaint(bounds);
         }
     }
     
     /** Given a position on the screen, locate the corresponding place
      * of the battleship board; if it doesn't correspond to any place of the
-     * board, return null. 
+     * board, return null. When zoomed out, this is the place under the
+     * position within the tile covering it. 
      * 
      * @param x X-coordinate of the screen
      * @param y Y-coordinate of the screen
@@ -133,8 +398,10 @@ public class BoardPanel extends JPanel {
         // |LM |TS |   |   
         // |   +---+---+--
         //
-        int ix = (x - leftMargin) / placeSize;
-        int iy = (y - topMargin)  / placeSize;
+        // x and y are relative to this panel, so they already account for
+        // scrolling; a pixel covers several places when zoomed out.
+        int ix = (int) (((long) (x - leftMargin) << lod) / placeSize);
+        int iy = (int) (((long) (y - topMargin) << lod) / placeSize);
         if (x > leftMargin && y > topMargin
             && ix < boardSize && iy < boardSize) {
             return board.at(ix + 1, iy + 1);
@@ -147,15 +414,168 @@ public class BoardPanel extends JPanel {
     @Override
     public void paint(Graphics g) {
         super.paint(g); // clear the background
-        drawGrid(g);
+        if (!isDetailed()) {
+            drawDensity(g);
+            drawTileOverlays(g);
+            return;
+        }
+        if (cachedRendering
+                && boardSize * placeSize < MAX_CACHED_EXTENT) {
+            g.drawImage(gridImage(), 0, 0, null);
+        } else {
+            drawGrid(g);
+        }
         drawPlaces(g);
     }
 
+    /** Return the range of tiles, or places when zoomed in, that intersect
+     * the clip area of the given graphics, as 1-based
+     * <code>{ x0, y0, x1, y1 }</code>. */
+    private int[] visibleTiles(Graphics g) {
+        int n = tiles();
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            return new int[] { 1, 1, n, n };
+        }
+        return new int[] {
+            Math.max(1, (clip.x - leftMargin) / placeSize + 1),
+            Math.max(1, (clip.y - topMargin) / placeSize + 1),
+            Math.min(n, (clip.x + clip.width - leftMargin) / placeSize + 1),
+            Math.min(n, (clip.y + clip.height - topMargin) / placeSize + 1) };
+    }
+
+    /** Draw the visible part of the board one pixel per tile into an
+     * image, and scale the image up to the tile size. A tile is blended
+     * from the board, miss and hit colors by the density of misses and
+     * hits in it; when zoomed in this far, a tile is a single place. */
+    private void drawDensity(Graphics g) {
+        int[] v = visibleTiles(g);
+        int w = v[2] - v[0] + 1;
+        int h = v[3] - v[1] + 1;
+        if (w <= 0 || h <= 0) {
+            return;
+        }
+        if (lod > 0) {
+            if (density == null) {
+                density = new ShotDensity(board);
+            }
+            density.validate();
+        }
+        BufferedImage image = new BufferedImage(w, h,
+                BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer())
+                .getData();
+        int empty = boardColor.getRGB();
+        int miss = missColor.getRGB();
+        int hit = hitColor.getRGB();
+        int i = 0;
+        for (int ty = v[1] - 1; ty < v[3]; ty++) {
+            for (int tx = v[0] - 1; tx < v[2]; tx++) {
+                if (lod == 0) {
+                    Place p = board.at(tx + 1, ty + 1);
+                    pixels[i++] = !p.isHit() ? empty
+                            : p.isEmpty() ? miss : hit;
+                    continue;
+                }
+                double area = density.area(lod, tx, ty);
+                double hits = density.hits(lod, tx, ty) / area;
+                double misses = density.misses(lod, tx, ty) / area;
+                int c = blend(empty, miss, misses);
+                if (hits > 0) {
+                    c = blend(c, hit, Math.max(0.5, hits));
+                }
+                pixels[i++] = c;
+            }
+        }
+        g.drawImage(image,
+                leftMargin + (v[0] - 1) * placeSize,
+                topMargin + (v[1] - 1) * placeSize,
+                w * placeSize, h * placeSize, null);
+    }
+
+    /** Draw the overlays over the visible tiles, bottom one first. An
+     * overlay that names the places it draws over has only those drawn,
+     * each over the whole tile covering it; any other is drawn over every
+     * visible place, which takes time proportional to the places of the
+     * visible tiles. */
+    private void drawTileOverlays(Graphics g) {
+        if (overlays.isEmpty()) {
+            return;
+        }
+        final Color oldColor = g.getColor();
+        int[] v = visibleTiles(g);
+        for (Overlay overlay: overlays) {
+            Iterable<Place> places = overlay.places(board);
+            if (places != null) {
+                for (Place p: places) {
+                    drawTileOverlay(g, overlay, p, v);
+                }
+                continue;
+            }
+            int x1 = Math.min(boardSize, v[2] << lod);
+            int y1 = Math.min(boardSize, v[3] << lod);
+            for (int j = ((v[1] - 1) << lod) + 1; j <= y1; j++) {
+                for (int i = ((v[0] - 1) << lod) + 1; i <= x1; i++) {
+                    drawTileOverlay(g, overlay, board.at(i, j), v);
+                }
+            }
+        }
+        g.setColor(oldColor);
+    }
+
+    /** Draw the given overlay over the tile covering the given place, if
+     * the tile is within the given range of visible tiles. */
+    private void drawTileOverlay(Graphics g, Overlay overlay, Place place,
+            int[] v) {
+        int tx = ((place.getX() - 1) >> lod) + 1;
+        int ty = ((place.getY() - 1) >> lod) + 1;
+        if (tx >= v[0] && tx <= v[2] && ty >= v[1] && ty <= v[3]) {
+            overlay.draw(g, place, leftMargin + (tx - 1) * placeSize,
+                    topMargin + (ty - 1) * placeSize, placeSize);
+        }
+    }
+
+    /** Return the RGB color between the two given RGB colors at the given
+     * fraction, 0 being the first color and 1 the second. */
+    private static int blend(int from, int to, double fraction) {
+        double f = Math.min(1, fraction);
+        int rgb = 0;
+        for (int shift = 0; shift <= 16; shift += 8) {
+            int a = (from >> shift) & 0xff;
+            int b = (to >> shift) & 0xff;
+            rgb |= ((int) (a + (b - a) * f)) << shift;
+        }
+        return rgb;
+    }
+
+    /** Return the offscreen image of the grid, drawing it if it is not
+     * drawn yet or the place size or board color changed. */
+    private BufferedImage gridImage() {
+        if (gridImage == null || gridPlaceSize != placeSize
+                || !boardColor.equals(gridBoardColor)) {
+            int extent = boardSize * placeSize + 1;
+            gridImage = getGraphicsConfiguration() != null
+                ? getGraphicsConfiguration().createCompatibleImage(
+                    leftMargin + extent, topMargin + extent,
+                    BufferedImage.TRANSLUCENT)
+                : new BufferedImage(leftMargin + extent, topMargin + extent,
+                    BufferedImage.TYPE_INT_ARGB);
+            Graphics ig = gridImage.createGraphics();
+            drawGrid(ig);
+            ig.dispose();
+            gridPlaceSize = placeSize;
+            gridBoardColor = boardColor;
+        }
+        return gridImage;
+    }
+
     /** Draw a 2D grid representing a battleship board of 
      * <code>boardSize x boardSize</code> places. Both horizontal and
-     * vertical lines are spaced <code>placeSize</code> pixels. */
+     * vertical lines are spaced <code>placeSize</code> pixels. Only the
+     * lines intersecting the clip area of the given graphics are drawn. */
     private void drawGrid(Graphics g) {
         Color oldColor = g.getColor(); 
+        int[] v = visibleTiles(g);
 
         // fill the background of the frame.
 		final int frameSize = boardSize * placeSize;
@@ -164,37 +584,109 @@ public class BoardPanel extends JPanel {
         
         // draw vertical and horizontal lines
         g.setColor(lineColor);
-        int x = leftMargin;
-        int y = topMargin;
-        for (int i = 0; i <= boardSize; i++) {
-            g.drawLine(x, topMargin, x, topMargin + frameSize);
-            g.drawLine(leftMargin, y, leftMargin + frameSize, y);
-            x += placeSize;
-            y += placeSize;
+        int top = topMargin + (v[1] - 1) * placeSize;
+        int bottom = topMargin + v[3] * placeSize;
+        int left = leftMargin + (v[0] - 1) * placeSize;
+        int right = leftMargin + v[2] * placeSize;
+        for (int i = v[0] - 1; i <= v[2]; i++) {
+            int x = leftMargin + i * placeSize;
+            g.drawLine(x, top, x, bottom);
+        }
+        for (int j = v[1] - 1; j <= v[3]; j++) {
+            int y = topMargin + j * placeSize;
+            g.drawLine(left, y, right, y);
         }
 
         g.setColor(oldColor);
     }
 
-    /** Draw the places that are hit. */
+    /** Draw the places that are hit, and over each place the overlays
+     * of this panel. Only the places intersecting the clip area of the
+     * given graphics are visited, once each. */
     private void drawPlaces(Graphics g) {
         final Color oldColor = g.getColor();
-        for (Place p: board.places()) {
+        int[] v = visibleTiles(g);
+        int size = placeSize - 1;
+        for (int j = v[1]; j <= v[3]; j++) {
+          for (int i = v[0]; i <= v[2]; i++) {
+            Place p = board.at(i, j);
+            int x = leftMargin + (i - 1) * placeSize + 1;
+            int y = topMargin + (j - 1) * placeSize + 1;
     		if (p.isHit()) {
-    		    int x = leftMargin + (p.getX() - 1) * placeSize;
-    		    int y = topMargin + (p.getY() - 1) * placeSize;
     		    g.setColor(p.isEmpty() ? missColor : hitColor);
-    		    g.fillRect(x + 1, y + 1, placeSize - 1, placeSize - 1);
+    		    g.fillRect(x, y, size, size);
                 if (p.hasShip() && p.ship().isSunk()) {
                     g.setColor(Color.BLACK);
-                    g.drawLine(x + 1, y + 1,
-                            x + placeSize - 1, y + placeSize - 1);
-                    g.drawLine(x + 1, y + placeSize - 1,
-                            x + placeSize - 1, y + 1);
+                    g.drawLine(x, y, x + size - 1, y + size - 1);
+                    g.drawLine(x, y + size - 1, x + size - 1, y);
                 }
     		}
+            for (Overlay overlay: overlays) {
+                overlay.draw(g, p, x, y, size);
+            }
+          }
         }
         g.setColor(oldColor);
     }
 
+    /** Return an overlay that reveals the ships of the board by filling
+     * the places of ships that are not hit yet with the given color.
+     *
+     * @param color Color of the places of ships not hit
+     */
+    public static Overlay shipOverlay(Color color) {
+        return new Overlay() {
+            public void draw(Graphics g, Place place, int x, int y,
+                    int size) {
+                if (!place.isHit() && place.hasShip()) {
+                    g.setColor(color);
+                    g.fillRect(x, y, size, size);
+                }
+            }
+
+            public Iterable<Place> places(Board board) {
+                List<Place> places = new ArrayList<Place>();
+                for (Ship ship: board.ships()) {
+                    ship.places().forEach(places::add);
+                }
+                return places;
+            }
+        };
+    }
+
+    /** A layer drawn over the places of a board panel, e.g., to reveal
+     * ships or to highlight places. The panel draws each visible place
+     * and then its overlays, bottom one first, so an overlay may draw
+     * over the places below it but not over the grid lines. */
+    public interface Overlay {
+
+        /**
+         * Draw this overlay over the given place. The place is
+         * drawn inside the square of the given size whose top left
+         * corner is at the given coordinates.
+         *
+         * @param g Graphics to draw with; its color need not be restored
+         * @param place Place to draw over
+         * @param x X-coordinate of the square of the place
+         * @param y Y-coordinate of the square of the place
+         * @param size Width and height of the square of the place
+         */
+        void draw(Graphics g, Place place, int x, int y, int size);
+
+        /**
+         * Return the places this overlay draws over, if they are few,
+         * or null if it may draw over any place. When the panel is
+         * zoomed out so that a square shows a tile of several places,
+         * only the places returned are drawn, each over the square of
+         * its tile; if null is returned, every visible place is.
+         * By default, null is returned.
+         *
+         * @param board Board drawn by the panel
+         * @return Places drawn over, or null for all
+         */
+        default Iterable<Place> places(Board board) {
+            return null;
+        }
+    }
+
 }
@@ -0,0 +1,144 @@
+package battleship;
+
+import battleship.model.Board;
+import battleship.model.Place;
+
+/**
+ * Aggregated shots of a battleship board, used to draw the board when it
+ * is zoomed out so far that a screen pixel covers several places. For
+ * each level <code>lod &gt;= 1</code>, the board is divided into square
+ * tiles of <code>2^lod</code> x <code>2^lod</code> places, and the number
+ * of hits and misses in every tile is kept. The counts are built on first
+ * use and then updated on every shot, so a zoomed-out frame costs only
+ * the number of visible tiles.
+ *
+ * @see BoardPanel
+ */
+class ShotDensity extends Board.BoardChangeAdapter {
+
+    /** Board whose shots are aggregated. */
+    private final Board board;
+
+    /** Dimension of the board. */
+    private final int size;
+
+    /** Number of levels; a tile of the last level covers the board. */
+    private final int levels;
+
+    /** Hits on ships per tile, indexed by level and then by
+     * <code>ty * tiles(level) + tx</code>; null until built. */
+    private int[][] hits;
+
+    /** Misses per tile, indexed as <code>hits</code>. */
+    private int[][] misses;
+
+    /** Number of shots counted; compared against the board to detect
+     * a reset, which is not notified to listeners. */
+    private int counted;
+
+    /** Create the aggregated shots of the given board and start listening
+     * to it. */
+    ShotDensity(Board board) {
+        this.board = board;
+        this.size = board.size();
+        int lod = 0;
+        while ((1 << lod) < size) {
+            lod++;
+        }
+        this.levels = lod;
+        board.addBoardChangeListener(this);
+    }
+
+    /** Return the number of levels of detail above single places. */
+    int levels() {
+        return levels;
+    }
+
+    /** Return the number of tiles per row or column at the given level. */
+    int tiles(int lod) {
+        return (size + (1 << lod) - 1) >> lod;
+    }
+
+    /** Return the number of hits on ships in the given tile. */
+    int hits(int lod, int tx, int ty) {
+        return hits[lod][ty * tiles(lod) + tx];
+    }
+
+    /** Return the number of misses in the given tile. */
+    int misses(int lod, int tx, int ty) {
+        return misses[lod][ty * tiles(lod) + tx];
+    }
+
+    /** Return the number of places of the board in the given tile. Tiles
+     * at the right and bottom edges may be partial. */
+    int area(int lod, int tx, int ty) {
+        int side = 1 << lod;
+        int w = Math.min(side, size - tx * side);
+        int h = Math.min(side, size - ty * side);
+        return w * h;
+    }
+
+    /** Make the counts up-to-date with the board, building them if they
+     * are not built yet or the board was reset. */
+    void validate() {
+        if (hits == null || counted != board.numOfShots()) {
+            rebuild();
+        }
+    }
+
+    /** Count the shots of the board from scratch. */
+    private void rebuild() {
+        hits = new int[levels + 1][];
+        misses = new int[levels + 1][];
+        for (int lod = 1; lod <= levels; lod++) {
+            hits[lod] = new int[tiles(lod) * tiles(lod)];
+            misses[lod] = new int[tiles(lod) * tiles(lod)];
+        }
+        if (levels > 0) {
+            int n = tiles(1);
+            for (Place p: board.places()) {
+                if (p.isHit()) {
+                    int[] counts = p.isEmpty() ? misses[1] : hits[1];
+                    counts[((p.getY() - 1) >> 1) * n + ((p.getX() - 1) >> 1)]++;
+                }
+            }
+            for (int lod = 2; lod <= levels; lod++) {
+                sumUp(hits, lod);
+                sumUp(misses, lod);
+            }
+        }
+        counted = board.numOfShots();
+    }
+
+    /** Compute the counts of the given level from the level below it. */
+    private void sumUp(int[][] counts, int lod) {
+        int below = tiles(lod - 1);
+        int n = tiles(lod);
+        for (int y = 0; y < below; y++) {
+            for (int x = 0; x < below; x++) {
+                counts[lod][(y >> 1) * n + (x >> 1)] +=
+                        counts[lod - 1][y * below + x];
+            }
+        }
+    }
+
+    /** Add the shot made on the given place to the tiles covering it. */
+    private void add(Place place) {
+        int[][] counts = place.isEmpty() ? misses : hits;
+        int x = place.getX() - 1;
+        int y = place.getY() - 1;
+        for (int lod = 1; lod <= levels; lod++) {
+            counts[lod][(y >> lod) * tiles(lod) + (x >> lod)]++;
+        }
+    }
+
+    @Override
+    public void hit(Place place, int numOfShots) {
+        if (hits != null && counted == numOfShots - 1) {
+            add(place);
+            counted = numOfShots;
+        } else {
+            hits = null; // out of step; rebuilt on next use
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * This class records the distribution of the values of one metric,
+ * e.g., the duration of a method, from any number of threads. Values
+ * are counted in log-linear buckets, which Simulator.Histogram also
+ * uses: exact below 64, then 32 buckets per power of two, about 3%
+ * precision.
+ * Recording a value is a few atomic additions and allocates nothing;
+ * percentiles are computed from the counts when they are read.
+ */
+
+package battleship.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class Metric implements MetricMBean {
+	//values below LINEAR are counted exactly
+	public static final int LINEAR = 64;
+	public static final int SUB_BITS = 5;
+	public static final int BUCKETS = LINEAR + (64 - 6) * (1 << SUB_BITS);
+
+	final String name;
+	final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	final LongAdder count = new LongAdder();
+	final LongAdder sum = new LongAdder();
+	final AtomicLong max = new AtomicLong();
+
+	public Metric(String name){
+		this.name = name;
+	}
+
+	//bucket of the given non-negative value
+	public static int bucket(long v){
+		if(v < LINEAR)
+			return (int) v;
+		int e = 63 - Long.numberOfLeadingZeros(v);
+		return LINEAR + (e - 6) * (1 << SUB_BITS)
+				+ (int) ((v >>> (e - SUB_BITS)) & ((1 << SUB_BITS) - 1));
+	}
+	//lowest value of the given bucket
+	public static long lowest(int b){
+		if(b < LINEAR)
+			return b;
+		int e = (b - LINEAR) / (1 << SUB_BITS) + 6;
+		long m = (b - LINEAR) % (1 << SUB_BITS);
+		return ((1L << SUB_BITS) + m) << (e - SUB_BITS);
+	}
+
+	public void record(long v){
+		v = Math.max(0, v);
+		this.counts.incrementAndGet(bucket(v));
+		this.count.increment();
+		this.sum.add(v);
+		long m = this.max.get();
+		while(v > m && !this.max.compareAndSet(m, v))
+			m = this.max.get();
+	}
+
+	//lowest value of the bucket holding the given percentile
+	public long percentile(double p){
+		long total = 0;
+		long[] snapshot = new long[BUCKETS];
+		for(int i = 0; i < BUCKETS; i++){
+			snapshot[i] = this.counts.get(i);
+			total += snapshot[i];
+		}
+		long rank = (long) Math.ceil(p / 100 * total);
+		long seen = 0;
+		for(int i = 0; i < BUCKETS; i++){
+			seen += snapshot[i];
+			if(seen >= rank && seen > 0)
+				return lowest(i);
+		}
+		return this.max.get();
+	}
+
+	public String getName(){
+		return this.name;
+	}
+	public long getCount(){
+		return this.count.sum();
+	}
+	public double getMean(){
+		long n = this.count.sum();
+		return n == 0 ? 0 : (double) this.sum.sum() / n;
+	}
+	public long getMax(){
+		return this.max.get();
+	}
+	public long getP50(){
+		return percentile(50);
+	}
+	public long getP90(){
+		return percentile(90);
+	}
+	public long getP99(){
+		return percentile(99);
+	}
+	public long getP999(){
+		return percentile(99.9);
+	}
+	//forget the values recorded; values recorded meanwhile may be lost
+	public void reset(){
+		for(int i = 0; i < BUCKETS; i++)
+			this.counts.set(i, 0);
+		this.count.reset();
+		this.sum.reset();
+		this.max.set(0);
+	}
+}
@@ -0,0 +1,19 @@
+/*
+ * This interface is what JMX shows of a Metric: the distribution of
+ * the values recorded since the last reset. Values are nanoseconds,
+ * except for metrics counting things, such as placement attempts.
+ */
+
+package battleship.metrics;
+
+public interface MetricMBean {
+	String getName();
+	long getCount();
+	double getMean();
+	long getMax();
+	long getP50();
+	long getP90();
+	long getP99();
+	long getP999();
+	void reset();
+}
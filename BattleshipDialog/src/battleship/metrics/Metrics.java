@@ -0,0 +1,69 @@
+/*
+ * This class holds the metrics of the game and publishes them as JMX
+ * MBeans of the platform server: battleship:type=Metrics is the
+ * switch, and every metric is battleship:type=Metric,name=<name>.
+ * Metrics are recorded by MetricsAspect only while enabled is true,
+ * so they can stay woven in: when disabled, an instrumented method
+ * only reads this flag. The flag starts with the battleship.metrics
+ * property and can be switched at any time over JMX, e.g., with
+ * jconsole.
+ */
+
+package battleship.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+public class Metrics implements MetricsMBean {
+	public static final String DOMAIN = "battleship";
+	//are metrics recorded?
+	public static volatile boolean enabled = Boolean.getBoolean("battleship.metrics");
+
+	static final Map<String, Metric> METRICS = new ConcurrentHashMap<>();
+	static final Metrics SWITCH = new Metrics();
+
+	static{
+		register(SWITCH, DOMAIN + ":type=Metrics");
+	}
+
+	//the metric of the given name, created and published on first use
+	public static Metric get(String name){
+		Metric metric = METRICS.get(name);
+		if(metric == null){
+			metric = METRICS.computeIfAbsent(name, Metric::new);
+			register(metric, DOMAIN + ":type=Metric,name=" + name);
+		}
+		return metric;
+	}
+
+	static void register(Object bean, String name){
+		try{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = new ObjectName(name);
+			if(!server.isRegistered(objectName))
+				server.registerMBean(bean, objectName);
+		} catch(JMException e){
+			//already registered by a racing thread, or no JMX; the
+			//metric is still recorded
+		}
+	}
+
+	public boolean isEnabled(){
+		return enabled;
+	}
+	public void setEnabled(boolean on){
+		enabled = on;
+	}
+	public String[] getMetricNames(){
+		return METRICS.keySet().stream().sorted().toArray(String[]::new);
+	}
+	public void reset(){
+		for(Metric m: METRICS.values())
+			m.reset();
+	}
+}
@@ -0,0 +1,13 @@
+/*
+ * This interface is the switch of the metrics over JMX.
+ */
+
+package battleship.metrics;
+
+public interface MetricsMBean {
+	boolean isEnabled();
+	void setEnabled(boolean enabled);
+	String[] getMetricNames();
+	//reset all the metrics
+	void reset();
+}
@@ -0,0 +1,147 @@
+package battleship.model;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import battleship.model.Board.BoardChangeListener;
+
+/**
+ * A board change listener that delivers board changes to another
+ * listener asynchronously. Every change is published to a queue and
+ * returns immediately; the queue is drained in order on the given
+ * executor, at most one drain at a time, so the delegate sees the
+ * changes one after another and never concurrently. A slow delegate
+ * therefore delays only its own queue, not the shot that caused the
+ * change.
+ *
+ * <p>If <code>coalesce</code> is set, a run of consecutive hits still
+ * queued when the drain reaches it is delivered as its last hit only,
+ * which carries the latest number of shots. This suits listeners that
+ * display the state of the board, such as a message bar, rather than
+ * listeners that need every place shot.
+ *
+ * <p>Places and ships are delivered as they are when the change is
+ * delivered, not as they were when it was published.
+ *
+ * @see Board#addBoardChangeListener(BoardChangeListener, Executor, boolean)
+ */
+final class AsyncBoardChangeListener implements BoardChangeListener {
+
+    /** Kinds of board changes. */
+    private static final int HIT = 0, SHIP_SUNK = 1, GAME_OVER = 2;
+
+    /** Listener to which changes are delivered. */
+    final BoardChangeListener delegate;
+
+    /** Executor on which changes are delivered. */
+    private final Executor executor;
+
+    /** Collapse runs of queued hits into their last hit? */
+    private final boolean coalesce;
+
+    /** Changes published but not yet delivered. */
+    private final Queue<Change> queue = new ConcurrentLinkedQueue<>();
+
+    /** Is a drain of the queue submitted or running? */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /** A board change to be delivered. */
+    private static final class Change {
+        final int kind;
+        final Place place;
+        final Ship ship;
+        final int numOfShots;
+
+        Change(int kind, Place place, Ship ship, int numOfShots) {
+            this.kind = kind;
+            this.place = place;
+            this.ship = ship;
+            this.numOfShots = numOfShots;
+        }
+    }
+
+    /**
+     * Create a listener delivering changes to the given listener.
+     *
+     * @param delegate Listener to which changes are delivered
+     * @param executor Executor on which changes are delivered
+     * @param coalesce True to collapse runs of queued hits into their last
+     */
+    AsyncBoardChangeListener(BoardChangeListener delegate, Executor executor,
+            boolean coalesce) {
+        this.delegate = delegate;
+        this.executor = executor;
+        this.coalesce = coalesce;
+    }
+
+    @Override
+    public void hit(Place place, int numOfShots) {
+        publish(new Change(HIT, place, null, numOfShots));
+    }
+
+    @Override
+    public void gameOver(int numOfShots) {
+        publish(new Change(GAME_OVER, null, null, numOfShots));
+    }
+
+    @Override
+    public void shipSunk(Ship ship) {
+        publish(new Change(SHIP_SUNK, null, ship, 0));
+    }
+
+    /** Queue the given change and submit a drain unless one is pending. */
+    private void publish(Change change) {
+        queue.add(change);
+        schedule();
+    }
+
+    /** Submit a drain of the queue unless one is submitted or running. */
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::drain);
+            } catch (RuntimeException e) {
+                scheduled.set(false);
+                throw e;
+            }
+        }
+    }
+
+    /** Deliver the queued changes in order. Only one drain runs at a
+     * time, so the queue has a single consumer here. */
+    private void drain() {
+        try {
+            Change change;
+            while ((change = queue.poll()) != null) {
+                if (coalesce && change.kind == HIT) {
+                    Change next;
+                    while ((next = queue.peek()) != null && next.kind == HIT) {
+                        change = queue.poll();
+                    }
+                }
+                deliver(change);
+            }
+        } finally {
+            scheduled.set(false);
+            if (!queue.isEmpty()) { // published after the last poll
+                schedule();
+            }
+        }
+    }
+
+    /** Deliver the given change to the delegate. */
+    private void deliver(Change change) {
+        switch (change.kind) {
+        case HIT:
+            delegate.hit(change.place, change.numOfShots);
+            break;
+        case SHIP_SUNK:
+            delegate.shipSunk(change.ship);
+            break;
+        default:
+            delegate.gameOver(change.numOfShots);
+        }
+    }
+}
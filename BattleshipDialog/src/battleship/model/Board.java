@@ -3,7 +3,8 @@
 package battleship.model;
 
 import java.util.*;
-import java.util.stream.IntStream;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 
 import battleship.model.Ship;
 import battleship.model.Place;
@@ -17,6 +18,16 @@ import battleship.model.Place;
  * and game over, both of which along with the total number of shots can
  * be observed through the <code>BoardChangeListener</code>.
  *
+ * <p>The state of the places is stored in a packed {@link Grid}; places
+ * and ships are views over it, so that looking up a place and testing
+ * the places needed by a ship take constant time. A place is created
+ * when it is first asked for, so a large board costs little more than
+ * its grid until its places are used.
+ *
+ * <p>The board keeps a {@link Zobrist} hash of the outcomes of the
+ * shots made to it, updated by every shot, so that the observable state
+ * of a board can be used as a key in constant time.
+ *
  * @author cheon
  * @see Place
  * @see Ship
@@ -30,13 +41,29 @@ public class Board {
     /** Number of shots that this board was hit. */
     private int numOfShots;
 
-    /** Places of this board.
+    /** Number of ships of this board that are sunk. */
+    private int numOfSunkShips;
+
+    /** Places of this board asked for so far, indexed by row and then
+     * by column, both 0-based; a row is created when one of its places
+     * is first asked for.
      * @see Place
      */
-    private final List<Place> places;
+    private final Place[][] places;
+
+    /** Packed occupancy, shots and ship ids of the places of this board.
+     * @see Grid
+     */
+    private final Grid grid;
+
+    /** Zobrist keys of the places of this board. */
+    private final long[] zobristKeys;
+
+    /** Zobrist hash of the outcomes of the shots made to this board. */
+    private long zobrist;
     
     /** Create a default fleet of ships. */
-    private static List<Ship> defaultShips() {
+    static List<Ship> defaultShips() {
         return Arrays.asList(new Ship[] { 
                 new Ship("Aircraft carrier", 5),
                 new Ship("Battleship", 4),
@@ -51,6 +78,7 @@ public class Board {
     private final List<Ship> ships;
     
     /** Listeners listening to board changes such as sliding of tiles.
+     * Registration may happen while changes are being notified.
      * @see BoardChangeListener
      */
     private final List<BoardChangeListener> listeners;
@@ -76,26 +104,46 @@ public class Board {
      * @see Ship
      */
     public Board(int size, Iterable<Ship> ships) {
+        this(size, ships, new Grid(size));
+    }
+
+    /**
+     * Create an empty board of the given dimension that can host the given
+     * fleet of ships and stores the state of its places in the given grid.
+     *
+     * @param size Width and height of the board to be created
+     * @param ships Battleships to be placed in the board
+     * @param grid Empty grid of the same dimension
+     */
+    Board(int size, Iterable<Ship> ships, Grid grid) {
         this.size = size;
         numOfShots = 0;
-        places = new ArrayList<Place>(size * size);
-        for (int x = 1; x <= size; x++) {
-            for (int y = 1; y <= size; y++) {
-                places.add(new Place(x, y, this));
-            }
-        }
+        this.grid = grid;
+        zobristKeys = Zobrist.keys(size);
+        places = new Place[size][];
         this.ships = new ArrayList<>();
         ships.forEach(e -> this.ships.add(e));
-        listeners = new ArrayList<BoardChangeListener>();
+        if (this.ships.size() > Grid.MAX_SHIPS) {
+            throw new IllegalArgumentException(
+                    "Too many ships: " + this.ships.size());
+        }
+        listeners = new CopyOnWriteArrayList<BoardChangeListener>();
     }
     
     /**
      * Remove all the battleships placed on this board. This method should
-     * be called before this board is reused for another play.
+     * be called before this board is reused for another play. It takes
+     * time proportional to the number of ships, not to the size of this
+     * board, and allocates nothing.
      */
     public void reset() {
         numOfShots = 0;
-        places.stream().forEach(p -> p.reset());
+        for (int i = 0; i < ships.size(); i++) {
+            ships.get(i).clear();
+        }
+        grid.reset();
+        numOfSunkShips = 0;
+        zobrist = 0;
     }
     
     /**
@@ -116,21 +164,30 @@ public class Board {
      */
     public boolean placeShip(Ship ship, int x, int y, boolean dir) {
     	int len = ship.size();
-    	if (dir // horizontal? 
-    	    && (x + len - 1 <= this.size)  // have places?
-    	    && IntStream.range(x, x + len) // not occupied?
-    		    .allMatch(i -> at(i, y).isEmpty())) {
-    	    IntStream.range(x, x + len).forEach(i -> at(i,y).placeShip(ship));
-    	    return true;
+    	if (!grid.isFree(x, y, len, dir)) { // have places and not occupied?
+    	    return false;
+    	}
+    	int id = shipId(ship);
+    	int step = dir ? 1 : size;
+    	int i = grid.index(x, y);
+    	for (int k = 0; k < len; k++, i += step) {
+    	    // a place already shot turns from a miss into a hit
+    	    Place place = at(i % size + 1, i / size + 1);
+    	    boolean hit = grid.isHit(i);
+    	    if (hit) {
+    	        toggleZobrist(shotKey(place));
+    	    }
+    	    grid.occupy(i, id);
+    	    ship.addPlace(place);
+    	    if (hit) {
+    	        toggleZobrist(shotKey(place));
+    	    }
     	}
-    	if (!dir // vertical?
-    	    && (y + len - 1 <= this.size)
-    	    && IntStream.range(y, y + len)
-    		    .allMatch(j -> at(x, j).isEmpty())) {
-    	    IntStream.range(y, y + len).forEach(j -> at(x,j).placeShip(ship));
-    	    return true;
+    	if (ship.isSunk()) { // placed on places all hit
+    	    countSunk(1);
+    	    toggleZobrist(sunkKeys(ship));
     	}
-    	return false;
+    	return true;
     }
 
     /**
@@ -153,12 +210,31 @@ public class Board {
     	return placeShip(ship, place.getX(), place.getY(), dir);
     }
     
-    /** Return all the places of this board.
+    /** Return all the places of this board, row by row. The places not
+     *  asked for yet are created as they are iterated, but not kept.
      *  @return Places of this board
      *  @see Place
      */
     public Iterable<Place> places() {
-        return places;
+        return () -> new Iterator<Place>() {
+            private int i;
+
+            public boolean hasNext() {
+                return i < size * size;
+            }
+
+            public Place next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int x = i % size;
+                int y = i / size;
+                i++;
+                Place[] row = places[y];
+                return row != null && row[x] != null ? row[x]
+                        : new Place(x + 1, y + 1, Board.this);
+            }
+        };
     }
     
     /** Return all the ships that can be placed in this board.
@@ -185,19 +261,66 @@ public class Board {
 
     /**
      * Return the place at the given indices. Return a null if indices are
-     * invalid.
+     * invalid. The place is created the first time it is asked for;
+     * threads racing to create it may get different but equal places.
      * 
      * @param x 1-based column index
      * @param y 1-based row index
      * @return Place at the given indices or null
      */
     public Place at(int x, int y) {
-        for (Place p: places) {
-            if (p.getX() == x && p.getY() == y) {
-                return p;
-            }
+        if (!grid.contains(x, y)) {
+            return null;
+        }
+        Place[] row = places[y - 1];
+        if (row == null) {
+            row = new Place[size];
+            places[y - 1] = row;
+        }
+        Place place = row[x - 1];
+        if (place == null) {
+            place = new Place(x, y, this);
+            row[x - 1] = place;
         }
-        return null; 
+        return place;
+    }
+
+    /** Return the fleet of this board, in ship id order. */
+    List<Ship> fleet() {
+        return ships;
+    }
+
+    /** Return the packed state of the places of this board. */
+    Grid grid() {
+        return grid;
+    }
+
+    /**
+     * Return the ship placed on the place of the given index, or null
+     * if the place is empty.
+     *
+     * @param index Index of a place, <code>(y-1)*size + (x-1)</code>
+     * @return Ship placed on the place or null
+     */
+    Ship shipAt(int index) {
+        int id = grid.shipId(index);
+        return id == 0 ? null : ships.get(id - 1);
+    }
+
+    /**
+     * Return the 1-based id of the given ship in the fleet of this board.
+     *
+     * @param ship Ship of this board
+     * @return Id of the ship to be stored in the grid
+     * @throws IllegalArgumentException if the ship is not in the fleet
+     */
+    int shipId(Ship ship) {
+        int id = ships.indexOf(ship) + 1;
+        if (id == 0) {
+            throw new IllegalArgumentException(
+                    "Not a ship of this board: " + ship.name());
+        }
+        return id;
     }
 
     /** Return the dimension of this board.
@@ -221,7 +344,115 @@ public class Board {
      * @return True if all ships are sunk; false otherwise
      */
     public boolean isGameOver() {
-    	return ships.stream().allMatch(s -> s.isSunk());
+    	return numOfSunkShips == ships.size();
+    }
+
+    /** Add the given number to the places of the given ship that are
+     * hit, and return the new number. This method should be used only
+     * from a ship when one of its places is hit for the first time, or
+     * a place already hit is added to it or removed from it.
+     *
+     * @param ship Ship of this board
+     * @param delta Number of places hit or, if negative, removed
+     * @return Number of places of the ship that are hit
+     */
+    int addHits(Ship ship, int delta) {
+        return ship.addHits(delta);
+    }
+
+    /** Return the number of places of the given ship that are hit. */
+    int hits(Ship ship) {
+        return ship.hits();
+    }
+
+    /** Adjust the number of sunk ships by the given amount. This method
+     * should be used only when a ship sinks, is placed on places all hit,
+     * or is removed while sunk.
+     *
+     * @param delta 1 when a ship sinks; -1 when a sunk ship is removed
+     */
+    void countSunk(int delta) {
+        numOfSunkShips += delta;
+    }
+    
+    /** Take the given number of shots and count the sunk ships, after
+     * the state of this board was written directly to its grid and
+     * ships. Listeners are not notified.
+     *
+     * @param numOfShots Number of shots made to this board
+     * @see BoardCodec
+     */
+    void restored(int numOfShots) {
+        this.numOfShots = numOfShots;
+        numOfSunkShips = 0;
+        for (Ship ship : ships) {
+            if (ship.isSunk()) {
+                numOfSunkShips++;
+            }
+        }
+        zobrist = computeZobrist();
+    }
+
+    /** Return the Zobrist hash of the outcomes of the shots made to this
+     * board: the same for any two boards of the same size on which the
+     * same places were shot with the same outcomes, whatever the order
+     * of the shots.
+     *
+     * @return Hash of the observable state of this board
+     * @see Zobrist
+     */
+    public long zobrist() {
+        return zobrist;
+    }
+
+    /** Combine the given keys into the Zobrist hash of this board. This
+     * method should be used only from a place when it is claimed by a
+     * shot and when its ship sinks.
+     *
+     * @param keys Exclusive or of Zobrist keys
+     */
+    void toggleZobrist(long keys) {
+        zobrist ^= keys;
+    }
+
+    /** Return the key of the outcome of the shot at the given place,
+     * as a hit on a ship afloat if the place has a ship. */
+    long shotKey(Place place) {
+        return shotKey(place.index);
+    }
+
+    /** Return the key of the outcome of the shot at the place of the
+     * given index. */
+    private long shotKey(int index) {
+        return zobristKeys[3 * index
+                + (grid.isOccupied(index) ? Zobrist.HIT : Zobrist.MISS)];
+    }
+
+    /** Return the keys turning the places of the given ship from hit
+     * on a ship afloat to hit on a sunk ship. */
+    long sunkKeys(Ship ship) {
+        long keys = 0;
+        for (Place p : ship.places()) {
+            keys ^= zobristKeys[3 * p.index + Zobrist.HIT]
+                    ^ zobristKeys[3 * p.index + Zobrist.SUNK];
+        }
+        return keys;
+    }
+
+    /** Compute the Zobrist hash of this board from its places. */
+    long computeZobrist() {
+        long hash = 0;
+        for (int i = 0; i < size * size; i++) {
+            if (grid.isHit(i)) {
+                hash ^= shotKey(i);
+            }
+        }
+        for (Ship ship : ships) {
+            if (ship.isSunk()) {
+                hash ^= sunkKeys(ship);
+            }
+        }
+        return hash;
     }
     
     /** Record that the given place is hit. This method will call the
@@ -251,22 +482,59 @@ public class Board {
         }
 	}
 
-    /** Register the given listener to listen to board changes.
+    /** Register the given listener to listen to board changes. The
+     * listener is notified synchronously, on the thread that shoots.
      * @param listener Listener to be added
      * @see BoardChangeListener
      */
-    public void addBoardChangeListener(BoardChangeListener listener) {
-    	if (!listeners.contains(listener)) {
+    public synchronized void addBoardChangeListener(
+            BoardChangeListener listener) {
+    	if (!isRegistered(listener)) {
     	    listeners.add(listener);
     	}
     }
+
+    /** Register the given listener to listen to board changes
+     * asynchronously. Changes are queued when they happen and delivered
+     * in order on the given executor, so that a slow listener does not
+     * delay shots. If <code>coalesce</code> is true, consecutive hits
+     * still queued are delivered as the last of them only.
+     *
+     * @param listener Listener to be added
+     * @param executor Executor on which changes are delivered, e.g.,
+     *            <code>EventQueue::invokeLater</code> for UI listeners
+     * @param coalesce True to collapse bursts of hits
+     * @see BoardChangeListener
+     */
+    public synchronized void addBoardChangeListener(
+            BoardChangeListener listener, Executor executor, boolean coalesce) {
+        if (!isRegistered(listener)) {
+            listeners.add(
+                    new AsyncBoardChangeListener(listener, executor, coalesce));
+        }
+    }
     
-    /** Unregister the given listener from listening to board changes. 
+    /** Unregister the given listener from listening to board changes,
+     * whether it was registered synchronously or asynchronously. Changes
+     * already queued for an asynchronous listener are still delivered.
      * @param listener Listener to be removed
      * @see BoardChangeListener
      */
     public void removeBoardChangeListener(BoardChangeListener listener) {
-        listeners.remove(listener);
+        listeners.removeIf(l -> l.equals(listener)
+                || l instanceof AsyncBoardChangeListener
+                && ((AsyncBoardChangeListener) l).delegate.equals(listener));
+    }
+
+    /** Is the given listener registered, either way? */
+    private boolean isRegistered(BoardChangeListener listener) {
+        for (BoardChangeListener l: listeners) {
+            if (l.equals(listener) || l instanceof AsyncBoardChangeListener
+                    && ((AsyncBoardChangeListener) l).delegate.equals(listener)) {
+                return true;
+            }
+        }
+        return false;
     }
     
     /** Notify a place hit to the registered board change listeners. 
@@ -275,7 +543,7 @@ public class Board {
      * @param numOfShots Total number of shots
      * @see Place
      */
-    private void notifyHit(Place place, int numOfShots) {
+    void notifyHit(Place place, int numOfShots) {
     	for (BoardChangeListener listener: listeners) {
     	    listener.hit(place, numOfShots);
     	}
@@ -284,7 +552,7 @@ public class Board {
     /** Notify a game-over to the registered board change listeners.
      * @param numOfShots Total number of shots
      */
-    private void notifyGameOver(int numOfShots) {
+    void notifyGameOver(int numOfShots) {
     	for (BoardChangeListener listener: listeners) {
     	    listener.gameOver(numOfShots);
     	}
@@ -294,7 +562,7 @@ public class Board {
      * @param ship Ship that was sunk
      * @see Ship
      */
-    private void notifyShipSunk(Ship ship) {
+    void notifyShipSunk(Ship ship) {
     	for (BoardChangeListener listener: listeners) {
     	    listener.shipSunk(ship);
     	}
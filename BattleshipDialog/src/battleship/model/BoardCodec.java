@@ -0,0 +1,262 @@
+package battleship.model;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Compact binary snapshots of boards, to park, store or transfer games.
+ * A snapshot holds the layout of the fleet, the places shot and the
+ * number of shots, and takes a few dozen bytes for a 10x10 board with
+ * the default fleet. Snapshots are read straight from a
+ * <code>ByteBuffer</code>, heap, direct or mapped, without copying it,
+ * and restoring one writes the state of the board directly instead of
+ * replaying placements and shots, so no listener is notified.
+ *
+ * <p>A snapshot of version 1 consists of, in order:
+ * <ul>
+ * <li>the version, one byte;</li>
+ * <li>the board size, the number of shots and the number of ships,
+ *     each as an unsigned LEB128 varint;</li>
+ * <li>for each ship of the fleet, its length, and 0 if it is not placed
+ *     or else <code>(2 * index + (horizontal ? 1 : 0)) + 1</code>, where
+ *     <code>index</code> is the grid index of its head, both varints;</li>
+ * <li>the shot bitmap, one bit per place in grid index order, least
+ *     significant bit first, <code>ceil(size*size / 8)</code> bytes.</li>
+ * </ul>
+ * Snapshots are written and read at the position of the buffer, so
+ * several boards may be stored one after another in one buffer.
+ * Boards larger than <code>MAX_SIZE</code> have no snapshot, so reading
+ * an untrusted snapshot never allocates more than a board of that size.
+ *
+ * @see Board
+ * @see Grid
+ */
+public class BoardCodec {
+
+    /** Current version of the snapshot format. */
+    public static final int VERSION = 1;
+
+    /** Largest board size of a snapshot. */
+    public static final int MAX_SIZE = 1024;
+
+    private BoardCodec() {
+    }
+
+    /**
+     * Return the number of bytes of the snapshot of the given board.
+     *
+     * @param board Board to be written
+     * @return Size of its snapshot in bytes
+     */
+    public static int encodedSize(Board board) {
+        int n = 1 + varintSize(board.size()) + varintSize(board.numOfShots());
+        int count = 0;
+        for (Ship ship : board.ships()) {
+            n += varintSize(ship.size()) + varintSize(position(board, ship));
+            count++;
+        }
+        int cells = board.size() * board.size();
+        return n + varintSize(count) + (cells + 7) / 8;
+    }
+
+    /**
+     * Return the snapshot of the given board.
+     *
+     * @param board Board to be written
+     * @return Snapshot of the board
+     */
+    public static byte[] encode(Board board) {
+        ByteBuffer buffer = ByteBuffer.allocate(encodedSize(board));
+        write(board, buffer);
+        return buffer.array();
+    }
+
+    /**
+     * Write the snapshot of the given board at the position of the given
+     * buffer, advancing it past the snapshot.
+     *
+     * @param board Board to be written
+     * @param buffer Buffer with at least <code>encodedSize(board)</code>
+     *            bytes remaining
+     * @throws java.nio.BufferOverflowException if the snapshot does not
+     *             fit in the buffer
+     * @throws IllegalArgumentException if the board is larger than
+     *             <code>MAX_SIZE</code>
+     */
+    public static void write(Board board, ByteBuffer buffer) {
+        if (board.size() > MAX_SIZE) {
+            throw new IllegalArgumentException(
+                    "Board too large for a snapshot: " + board.size());
+        }
+        List<Ship> ships = board.fleet();
+        buffer.put((byte) VERSION);
+        putVarint(buffer, board.size());
+        putVarint(buffer, board.numOfShots());
+        putVarint(buffer, ships.size());
+        for (Ship ship : ships) {
+            putVarint(buffer, ship.size());
+            putVarint(buffer, position(board, ship));
+        }
+        Grid grid = board.grid();
+        int bytes = (board.size() * board.size() + 7) / 8;
+        for (int b = 0; b < bytes; b += 8) {
+            long word = grid.hitWord(b >>> 3);
+            for (int k = b; k < bytes && k < b + 8; k++, word >>>= 8) {
+                buffer.put((byte) word);
+            }
+        }
+    }
+
+    /**
+     * Read a snapshot at the position of the given buffer into a new
+     * board with the default fleet, advancing the buffer past it. The
+     * header of the snapshot is checked before the board is allocated.
+     *
+     * @param buffer Buffer holding a snapshot
+     * @return Board in the state of the snapshot
+     * @throws IllegalArgumentException if the snapshot is malformed, of
+     *             another version, of a board larger than
+     *             <code>MAX_SIZE</code>, or not of the default fleet
+     * @throws BufferUnderflowException if the snapshot is truncated
+     */
+    public static Board read(ByteBuffer buffer) {
+        int version = buffer.get(buffer.position());
+        if (version != VERSION) {
+            throw new IllegalArgumentException(
+                    "Unsupported snapshot version: " + version);
+        }
+        int start = buffer.position();
+        buffer.get();
+        int size = getVarint(buffer);
+        getVarint(buffer); // number of shots
+        int count = getVarint(buffer);
+        if (size < 1 || size > MAX_SIZE) {
+            throw new IllegalArgumentException("Invalid board size: " + size);
+        }
+        // two varints per ship at least, then the shot bitmap
+        if (count < 0 || buffer.remaining() < 2L * count + (size * size + 7) / 8) {
+            throw new BufferUnderflowException();
+        }
+        buffer.position(start);
+        Board board = new Board(size);
+        read(buffer, board);
+        return board;
+    }
+
+    /**
+     * Read a snapshot at the position of the given buffer into the given
+     * board, advancing the buffer past it. The board is reset and then
+     * written directly; its listeners are not notified. The board must
+     * be of the size of the snapshot, and its fleet of the same ship
+     * lengths in the same order. If a ship is found at an invalid
+     * position, the board is left reset.
+     *
+     * @param buffer Buffer holding a snapshot
+     * @param board Board to be restored
+     * @throws IllegalArgumentException if the snapshot is malformed, of
+     *             another version, or does not fit the board
+     * @throws BufferUnderflowException if the snapshot is truncated
+     */
+    public static void read(ByteBuffer buffer, Board board) {
+        int version = buffer.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException(
+                    "Unsupported snapshot version: " + version);
+        }
+        int size = getVarint(buffer);
+        int numOfShots = getVarint(buffer);
+        int count = getVarint(buffer);
+        List<Ship> ships = board.fleet();
+        if (size != board.size() || count != ships.size()) {
+            throw new IllegalArgumentException("Snapshot of a board of size "
+                    + size + " with " + count + " ships does not fit");
+        }
+        int[] layout = new int[2 * count];
+        for (int i = 0; i < count; i++) {
+            layout[2 * i] = getVarint(buffer);
+            layout[2 * i + 1] = getVarint(buffer);
+            if (layout[2 * i] != ships.get(i).size()) {
+                throw new IllegalArgumentException("Ship of length "
+                        + layout[2 * i] + " does not fit "
+                        + ships.get(i).name());
+            }
+        }
+        int cells = size * size;
+        int bytes = (cells + 7) / 8;
+        if (buffer.remaining() < bytes) {
+            throw new BufferUnderflowException();
+        }
+        board.reset();
+
+        // shots first, so that placing a ship counts its hits
+        Grid grid = board.grid();
+        for (int b = 0; b < bytes; b += 8) {
+            long word = 0;
+            for (int k = b; k < bytes && k < b + 8; k++) {
+                word |= (buffer.get() & 0xFFL) << ((k - b) * 8);
+            }
+            if (b + 8 >= bytes && (cells & 63) != 0) {
+                word &= -1L >>> -cells;
+            }
+            grid.setHitWord(b >>> 3, word);
+        }
+
+        for (int i = 0; i < count; i++) {
+            Ship ship = ships.get(i);
+            int pos = layout[2 * i + 1];
+            if (pos != 0) {
+                int index = (pos - 1) >>> 1;
+                boolean dir = ((pos - 1) & 1) != 0;
+                if (index >= cells || !board.placeShip(ship,
+                        index % size + 1, index / size + 1, dir)) {
+                    board.reset();
+                    throw new IllegalArgumentException(
+                            "Invalid position of " + ship.name());
+                }
+            }
+        }
+        board.restored(numOfShots);
+    }
+
+    /** Return the encoded position of the given ship. */
+    private static int position(Board board, Ship ship) {
+        if (!ship.isDeployed()) {
+            return 0;
+        }
+        Place head = ship.head();
+        int index = (head.getY() - 1) * board.size() + (head.getX() - 1);
+        return (2 * index + (ship.isHorizontal() ? 1 : 0)) + 1;
+    }
+
+    /** Return the number of bytes of the given value as a varint. */
+    private static int varintSize(int value) {
+        int n = 1;
+        while ((value >>>= 7) != 0) {
+            n++;
+        }
+        return n;
+    }
+
+    /** Write the given value as an unsigned LEB128 varint. */
+    private static void putVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /** Read an unsigned LEB128 varint of at most 32 bits. */
+    private static int getVarint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+}
@@ -0,0 +1,252 @@
+package battleship.model;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A game board that can be shot from several threads at once, e.g., by
+ * AI threads, network players or simulation workers sharing one board.
+ * Claiming a place is a single compare-and-set on the word of the shot
+ * bitboard holding it, so exactly one of several concurrent shots at a
+ * place marks it as hit and counts against its ship, whose hits are
+ * counted in an atomic array of this board. Shots are counted
+ * with a striped counter, and a ship sinking and the game being over
+ * are each notified exactly once, by whichever shooter observes them
+ * first. The Zobrist hash is updated with atomic exclusive ors, so it
+ * is exact once concurrent shots are over. None of this takes a lock.
+ *
+ * <p>Ships must be placed, and the board reset, while no one shoots.
+ * Listeners are called on the shooting threads, possibly concurrently;
+ * the number of shots given to them is the count at the time of the
+ * call, which under contention may include shots made by others.
+ *
+ * @see Board
+ */
+public class ConcurrentBoard extends Board {
+
+    /** Number of shots made to this board. */
+    private final LongAdder shots = new LongAdder();
+
+    /** Number of ships of this board that are sunk. */
+    private final AtomicInteger sunkShips = new AtomicInteger();
+
+    /** Whether the sinking of each ship was notified, indexed by the
+     * 1-based ship id minus 1; 1 if notified. */
+    private final AtomicIntegerArray sinkNotified;
+
+    /** Number of places hit of each ship, indexed as
+     * <code>sinkNotified</code>. */
+    private final AtomicIntegerArray shipHits;
+
+    /** Number of ship sinkings notified. */
+    private final AtomicInteger sinksNotified = new AtomicInteger();
+
+    /** Number of ships of the fleet of this board. */
+    private final int fleetSize;
+
+    /** Zobrist hash of the outcomes of the shots made to this board. */
+    private final AtomicLong zobrist = new AtomicLong();
+
+    /**
+     * Create an empty board of the given dimension that can host the
+     * default fleet of ships.
+     *
+     * @param size Width and height of the board to be created
+     */
+    public ConcurrentBoard(int size) {
+        this(size, defaultShips());
+    }
+
+    /**
+     * Create an empty board of the given dimension that can host the given
+     * fleet of ships.
+     *
+     * @param size Width and height of the board to be created
+     * @param ships Battleships to be placed in the board
+     */
+    public ConcurrentBoard(int size, Iterable<Ship> ships) {
+        super(size, ships, new AtomicGrid(size));
+        int n = 0;
+        for (Ship ship : ships()) {
+            n++;
+        }
+        fleetSize = n;
+        sinkNotified = new AtomicIntegerArray(n);
+        shipHits = new AtomicIntegerArray(n);
+    }
+
+    /**
+     * Remove all the battleships placed on this board. This method must
+     * not be called while the board is being shot.
+     */
+    @Override
+    public void reset() {
+        super.reset();
+        shots.reset();
+        sunkShips.set(0);
+        for (int i = 0; i < fleetSize; i++) {
+            sinkNotified.set(i, 0);
+            shipHits.set(i, 0);
+        }
+        sinksNotified.set(0);
+        zobrist.set(0);
+    }
+
+    @Override
+    public int numOfShots() {
+        return shots.intValue();
+    }
+
+    @Override
+    public boolean isGameOver() {
+        return sunkShips.get() == fleetSize;
+    }
+
+    @Override
+    public long zobrist() {
+        return zobrist.get();
+    }
+
+    @Override
+    void toggleZobrist(long keys) {
+        long hash;
+        do {
+            hash = zobrist.get();
+        } while (!zobrist.compareAndSet(hash, hash ^ keys));
+    }
+
+    @Override
+    int addHits(Ship ship, int delta) {
+        return shipHits.addAndGet(shipId(ship) - 1, delta);
+    }
+
+    /** Return the number of places of the given ship that are hit; the
+     * ship is found by the id stored at its first place. */
+    @Override
+    int hits(Ship ship) {
+        return shipHits.get(grid().shipId(ship.head().index) - 1);
+    }
+
+    @Override
+    void countSunk(int delta) {
+        sunkShips.addAndGet(delta);
+    }
+
+    /** Take the given number of shots and count the sunk ships of a
+     * restored board; the sinking of these ships counts as notified. */
+    @Override
+    void restored(int numOfShots) {
+        shots.reset();
+        shots.add(numOfShots);
+        sunkShips.set(0);
+        for (Ship ship : ships()) {
+            if (ship.isSunk()) {
+                sunkShips.incrementAndGet();
+                sinkNotified.set(shipId(ship) - 1, 1);
+                sinksNotified.incrementAndGet();
+            }
+        }
+        zobrist.set(computeZobrist());
+    }
+
+    /** Record that the given place is hit. The place is claimed by
+     * calling its <code>hit</code> method if it is not hit yet; every
+     * call counts as one shot. If the ship of the place is sunk and its
+     * sinking was not notified yet, this call notifies it, and the game
+     * over if it was the last ship.
+     *
+     * @param place Place to shoot
+     * @see Place
+     */
+    @Override
+    public void hit(Place place) {
+        if (!place.isHit()) {
+            place.hit();
+            return; // Place.hit will call this method.
+        }
+        shots.increment();
+        notifyHit(place, numOfShots());
+
+        Ship ship = place.ship();
+        if (ship != null && ship.isSunk()
+                && sinkNotified.compareAndSet(shipId(ship) - 1, 0, 1)) {
+            notifyShipSunk(ship);
+            if (sinksNotified.incrementAndGet() == fleetSize) {
+                notifyGameOver(numOfShots());
+            }
+        }
+    }
+
+    /** A grid whose shot bitboard is updated with compare-and-set. */
+    private static class AtomicGrid extends Grid {
+
+        /** Bitboard of the cells that were shot. */
+        private final AtomicLongArray hits;
+
+        AtomicGrid(int size) {
+            super(size);
+            hits = new AtomicLongArray((size * size + 63) >>> 6);
+        }
+
+        @Override
+        public boolean isHit(int i) {
+            return (hits.get(i >>> 6) & (1L << i)) != 0;
+        }
+
+        @Override
+        public boolean hit(int i) {
+            long bit = 1L << i;
+            long word;
+            do {
+                word = hits.get(i >>> 6);
+                if ((word & bit) != 0) {
+                    return false;
+                }
+            } while (!hits.compareAndSet(i >>> 6, word, word | bit));
+            return true;
+        }
+
+        @Override
+        public long hitWord(int w) {
+            return hits.get(w);
+        }
+
+        @Override
+        public void setHitWord(int w, long bits) {
+            hits.set(w, bits);
+        }
+
+        @Override
+        public void clear(int i) {
+            super.clear(i);
+            long bit = 1L << i;
+            long word;
+            do {
+                word = hits.get(i >>> 6);
+            } while (!hits.compareAndSet(i >>> 6, word, word & ~bit));
+        }
+
+        @Override
+        public void clear() {
+            super.clear();
+            clearHits();
+        }
+
+        /** Start a new generation; the shot bitboard, which is not
+         * stamped, is cleared word by word. */
+        @Override
+        public void reset() {
+            super.reset();
+            clearHits();
+        }
+
+        private void clearHits() {
+            for (int w = 0; w < hits.length(); w++) {
+                hits.set(w, 0L);
+            }
+        }
+    }
+}
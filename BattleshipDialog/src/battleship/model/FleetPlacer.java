@@ -0,0 +1,262 @@
+package battleship.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Places the fleet of a board at random. Rather than drawing random
+ * positions until one fits, the placer enumerates the positions still
+ * legal for each ship against the current occupancy of the board and
+ * picks one of them, so that every ship is placed in one pass over the
+ * board. Fleets that cannot fit are rejected before any ship is placed,
+ * and the work done for one fleet is bounded.
+ *
+ * <p>In uniform mode, layouts are drawn uniformly over all the valid
+ * configurations of the fleet by drawing every ship independently and
+ * rejecting layouts that overlap. The number of such draws is capped;
+ * past the cap the placer falls back to the enumerating placement,
+ * whose layouts are not uniform, and reports it through
+ * {@link #wasUniform()}.
+ *
+ * @see Board#placeShip(Ship, int, int, boolean)
+ */
+public class FleetPlacer {
+
+    /** Largest number of whole-fleet draws in uniform mode. */
+    public static final int MAX_UNIFORM_DRAWS = 10_000;
+
+    /** Largest number of restarts when a ship has no legal position. */
+    public static final int MAX_RESTARTS = 100;
+
+    /** Source of random placements. */
+    private final Random random;
+
+    /** Draw layouts uniformly over all valid configurations? */
+    private final boolean uniform;
+
+    /** Number of placement attempts made by the last call to place. */
+    private int attempts;
+
+    /** Was the last layout drawn uniformly? */
+    private boolean drawnUniformly;
+
+    /**
+     * Create a placer that places each ship uniformly over the positions
+     * left legal by the ships placed before it.
+     *
+     * @param random Source of random placements
+     */
+    public FleetPlacer(Random random) {
+        this(random, false);
+    }
+
+    /**
+     * Create a placer. In uniform mode, a fleet so dense that no layout
+     * is drawn within {@link #MAX_UNIFORM_DRAWS} draws is placed as by
+     * a non-uniform placer instead; check {@link #wasUniform()} after
+     * placing when the distribution matters.
+     *
+     * @param random Source of random placements
+     * @param uniform True to draw layouts uniformly over all the valid
+     *            configurations of the fleet
+     */
+    public FleetPlacer(Random random, boolean uniform) {
+        this.random = random;
+        this.uniform = uniform;
+    }
+
+    /**
+     * Place all the ships of the given board, which must have no ship
+     * placed on it.
+     *
+     * @param board Board whose ships are to be placed
+     * @throws IllegalArgumentException if the fleet cannot fit in the board
+     * @throws IllegalStateException if no layout was found within the
+     *             bounded number of attempts
+     */
+    public void place(Board board) {
+        attempts = 0;
+        drawnUniformly = false;
+        if (!fits(board)) {
+            throw new IllegalArgumentException(
+                    "Fleet does not fit in a board of size " + board.size());
+        }
+        int[] packing = pack(board);
+        if (uniform && placeUniformly(board)) {
+            drawnUniformly = true;
+            return;
+        }
+        for (int restart = 0; restart <= MAX_RESTARTS; restart++) {
+            if (placeSequentially(board)) {
+                return;
+            }
+            removeAll(board);
+        }
+        if (packing == null) {
+            throw new IllegalStateException("No layout found for the fleet");
+        }
+        int i = 0;
+        for (Ship ship : board.ships()) {
+            attempts++;
+            board.placeShip(ship, packing[i], packing[i + 1], true);
+            i += 2;
+        }
+    }
+
+    /** Return the number of placement attempts made by the last call to
+     * <code>place</code>. An attempt is one call to
+     * <code>Board.placeShip</code>.
+     *
+     * @return Number of placement attempts
+     */
+    public int attempts() {
+        return attempts;
+    }
+
+    /** Was the layout of the last call to <code>place</code> drawn
+     * uniformly? False for a non-uniform placer, and for a uniform one
+     * that fell back to the enumerating placement past its draw cap.
+     *
+     * @return True if the last layout was drawn uniformly
+     */
+    public boolean wasUniform() {
+        return drawnUniformly;
+    }
+
+    /**
+     * Can the fleet of the given board possibly fit in it? Every ship must
+     * be at most as long as the board and all the ships together must not
+     * cover more places than the board has. These conditions are necessary
+     * only: a fleet that passes them may still not fit, in which case
+     * <code>place</code> gives up after its bounded attempts.
+     *
+     * @param board Board to be checked
+     * @return True if the fleet may fit; false if it certainly cannot
+     */
+    public static boolean fits(Board board) {
+        int size = board.size();
+        long total = 0;
+        for (Ship ship : board.ships()) {
+            if (ship.size() < 1 || ship.size() > size) {
+                return false;
+            }
+            total += ship.size();
+        }
+        return total <= (long) size * size;
+    }
+
+    /**
+     * Place every ship at a position drawn uniformly among the positions
+     * still legal for it. Return false if some ship has no legal position.
+     */
+    private boolean placeSequentially(Board board) {
+        Grid grid = board.grid();
+        int size = board.size();
+        for (Ship ship : board.ships()) {
+            int len = ship.size();
+            int count = 0;
+            for (int y = 1; y <= size; y++) {
+                for (int x = 1; x <= size; x++) {
+                    if (grid.isFree(x, y, len, true)) {
+                        count++;
+                    }
+                    if (len > 1 && grid.isFree(x, y, len, false)) {
+                        count++;
+                    }
+                }
+            }
+            if (count == 0) {
+                return false;
+            }
+            int pick = random.nextInt(count);
+            search:
+            for (int y = 1; y <= size; y++) {
+                for (int x = 1; x <= size; x++) {
+                    if (grid.isFree(x, y, len, true) && pick-- == 0) {
+                        attempts++;
+                        board.placeShip(ship, x, y, true);
+                        break search;
+                    }
+                    if (len > 1 && grid.isFree(x, y, len, false)
+                            && pick-- == 0) {
+                        attempts++;
+                        board.placeShip(ship, x, y, false);
+                        break search;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Draw every ship independently and uniformly over the positions
+     * within the board, accepting the first layout without overlaps.
+     * Return false if no layout was accepted within the cap.
+     */
+    private boolean placeUniformly(Board board) {
+        int size = board.size();
+        for (int draw = 0; draw < MAX_UNIFORM_DRAWS; draw++) {
+            boolean placed = true;
+            for (Ship ship : board.ships()) {
+                int len = ship.size();
+                // a ship of length 1 has the same position either way
+                boolean dir = len == 1 || random.nextBoolean();
+                int span = size - len + 1;
+                int x = 1 + random.nextInt(dir ? span : size);
+                int y = 1 + random.nextInt(dir ? size : span);
+                attempts++;
+                if (!board.placeShip(ship, x, y, dir)) {
+                    placed = false;
+                    break;
+                }
+            }
+            if (placed) {
+                return true;
+            }
+            removeAll(board);
+        }
+        return false;
+    }
+
+    /** Remove all the ships placed on the given board. */
+    private static void removeAll(Board board) {
+        board.ships().forEach(s -> s.removePlaces());
+    }
+
+    /**
+     * Pack the fleet horizontally into the rows of the board, longest
+     * ship first, each into the first row with room for it. Return the
+     * (x, y) starting positions in fleet order, or null if the ships do
+     * not all fit this way. A packing proves that the fleet fits.
+     */
+    private static int[] pack(Board board) {
+        int size = board.size();
+        List<Ship> ships = new ArrayList<>();
+        board.ships().forEach(ships::add);
+        Integer[] order = new Integer[ships.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order,
+                (a, b) -> ships.get(b).size() - ships.get(a).size());
+        int[] used = new int[size];
+        int[] packing = new int[2 * ships.size()];
+        for (int i : order) {
+            int len = ships.get(i).size();
+            int row = 0;
+            while (row < size && used[row] + len > size) {
+                row++;
+            }
+            if (row == size) {
+                return null;
+            }
+            packing[2 * i] = used[row] + 1;
+            packing[2 * i + 1] = row + 1;
+            used[row] += len;
+        }
+        return packing;
+    }
+}
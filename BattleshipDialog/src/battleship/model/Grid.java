@@ -0,0 +1,261 @@
+package battleship.model;
+
+import java.util.Arrays;
+
+/**
+ * Packed cell state of a game board. A grid of <code>size</code> *
+ * <code>size</code> cells stores, for each cell, whether it is occupied
+ * by a ship, whether it was shot, and the id of the ship placed on it.
+ * Occupancy and shots are kept in <code>long</code> bitboards and ship
+ * ids in a byte array, all indexed by <code>(y-1)*size + (x-1)</code>,
+ * so that every query is a constant-time array access and a horizontal
+ * run of cells can be tested a word at a time.
+ *
+ * <p>Every bitboard word is stamped with the generation in which it was
+ * last written, and a word of an older generation reads as all clear.
+ * Resetting the grid thus only starts a new generation, in constant
+ * time; a stale word is cleared when it is next written. Ship ids are
+ * not cleared, as the id of a cell is read only if the cell is occupied.
+ *
+ * <p>A ship id is the 1-based position of the ship in the fleet of the
+ * owning board; 0 denotes an empty cell.
+ *
+ * @see Board
+ * @see Place
+ */
+public class Grid {
+
+    /** Largest number of ships that can be identified in a grid. */
+    public static final int MAX_SHIPS = Byte.MAX_VALUE;
+
+    /** Width and height of this grid. */
+    private final int size;
+
+    /** Bitboard of the cells occupied by a ship. */
+    private final long[] occupied;
+
+    /** Bitboard of the cells that were shot. */
+    private final long[] hits;
+
+    /** Ship id of each cell; meaningful only if the cell is occupied. */
+    private final byte[] shipIds;
+
+    /** Generation in which each word of the bitboards was last written. */
+    private final int[] stamps;
+
+    /** Current generation; words of other generations are clear. */
+    private int generation;
+
+    /**
+     * Create an empty grid of the given dimension.
+     *
+     * @param size Width and height of the grid to be created
+     */
+    public Grid(int size) {
+        this.size = size;
+        int words = (size * size + 63) >>> 6;
+        occupied = new long[words];
+        hits = new long[words];
+        shipIds = new byte[size * size];
+        stamps = new int[words];
+    }
+
+    /** Make the given word of the bitboards current, clearing it if it
+     * was last written in an older generation. */
+    private void renew(int w) {
+        if (stamps[w] != generation) {
+            occupied[w] = 0L;
+            hits[w] = 0L;
+            stamps[w] = generation;
+        }
+    }
+
+    /** Return the given word of the occupancy bitboard. */
+    private long occupiedWord(int w) {
+        return stamps[w] == generation ? occupied[w] : 0L;
+    }
+
+    /** Return the dimension of this grid.
+     *
+     * @return Width and height of this grid
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Return the cell index of the given 1-based indices.
+     *
+     * @param x 1-based column index
+     * @param y 1-based row index
+     * @return Cell index, <code>(y-1)*size + (x-1)</code>
+     */
+    public int index(int x, int y) {
+        return (y - 1) * size + (x - 1);
+    }
+
+    /**
+     * Are the given 1-based indices within this grid?
+     *
+     * @param x 1-based column index
+     * @param y 1-based row index
+     * @return True if (x, y) denotes a cell of this grid; false otherwise
+     */
+    public boolean contains(int x, int y) {
+        return x >= 1 && x <= size && y >= 1 && y <= size;
+    }
+
+    /** Is the cell of the given index occupied by a ship?
+     * @param i Cell index
+     * @return True if a ship is placed on the cell; false otherwise
+     */
+    public boolean isOccupied(int i) {
+        return (occupiedWord(i >>> 6) & (1L << i)) != 0;
+    }
+
+    /** Was the cell of the given index shot?
+     * @param i Cell index
+     * @return True if the cell was shot; false otherwise
+     */
+    public boolean isHit(int i) {
+        return (hitWord(i >>> 6) & (1L << i)) != 0;
+    }
+
+    /** Return 64 cells of the shot bitboard: bit <code>k</code> of word
+     * <code>w</code> tells whether the cell of index <code>64*w + k</code>
+     * was shot.
+     * @param w Word index, less than <code>(size*size + 63) / 64</code>
+     * @return Bits of the cells of the word
+     */
+    public long hitWord(int w) {
+        return stamps[w] == generation ? hits[w] : 0L;
+    }
+
+    /** Set 64 cells of the shot bitboard at once. The word is stored as
+     * given; bits past the last cell must be clear.
+     * @param w Word index, less than <code>(size*size + 63) / 64</code>
+     * @param bits Bits of the cells of the word
+     * @see #hitWord(int)
+     */
+    public void setHitWord(int w, long bits) {
+        renew(w);
+        hits[w] = bits;
+    }
+
+    /** Return the id of the ship placed on the cell of the given index.
+     * @param i Cell index
+     * @return 1-based ship id, or 0 if the cell is empty
+     */
+    public int shipId(int i) {
+        return isOccupied(i) ? shipIds[i] : 0;
+    }
+
+    /**
+     * Mark the cell of the given index as shot.
+     *
+     * @param i Cell index
+     * @return True if the cell was not shot before; false otherwise
+     */
+    public boolean hit(int i) {
+        renew(i >>> 6);
+        long bit = 1L << i;
+        long word = hits[i >>> 6];
+        hits[i >>> 6] = word | bit;
+        return (word & bit) == 0;
+    }
+
+    /**
+     * Place the ship of the given id on the cell of the given index.
+     *
+     * @param i Cell index
+     * @param id 1-based ship id
+     */
+    public void occupy(int i, int id) {
+        renew(i >>> 6);
+        occupied[i >>> 6] |= 1L << i;
+        shipIds[i] = (byte) id;
+    }
+
+    /**
+     * Clear the cell of the given index. This removes both the shot made
+     * on the cell and the ship placed on it.
+     *
+     * @param i Cell index
+     */
+    public void clear(int i) {
+        renew(i >>> 6);
+        occupied[i >>> 6] &= ~(1L << i);
+        hits[i >>> 6] &= ~(1L << i);
+        shipIds[i] = 0;
+    }
+
+    /** Clear all the cells of this grid, in time proportional to its
+     * number of cells. */
+    public void clear() {
+        Arrays.fill(occupied, 0L);
+        Arrays.fill(hits, 0L);
+        Arrays.fill(shipIds, (byte) 0);
+        Arrays.fill(stamps, 0);
+        generation = 0;
+    }
+
+    /** Clear all the cells of this grid in constant time, by starting a
+     * new generation. Once in 2^32 resets, when the generation wraps
+     * around, the grid is cleared in full instead. */
+    public void reset() {
+        if (++generation == 0) {
+            clear();
+        }
+    }
+
+    /**
+     * Can a ship of the given length be placed at the given starting
+     * position? I.e., are all the cells it would cover within this grid
+     * and not occupied? A horizontal run is tested a word at a time.
+     *
+     * @param x 1-based column index of the starting position
+     * @param y 1-based row index of the starting position
+     * @param len Length of the ship
+     * @param dir true for horizontal placement and false for vertical
+     * @return True if the cells are available; false otherwise
+     */
+    public boolean isFree(int x, int y, int len, boolean dir) {
+        if (!contains(x, y) || len <= 0) {
+            return false;
+        }
+        int i = index(x, y);
+        if (dir) {
+            return x + len - 1 <= size && !anyOccupied(i, i + len);
+        }
+        if (y + len - 1 > size) {
+            return false;
+        }
+        for (int k = 0; k < len; k++, i += size) {
+            if (isOccupied(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Is any cell of the range <code>[from, to)</code> occupied? */
+    private boolean anyOccupied(int from, int to) {
+        int first = from >>> 6;
+        int last = (to - 1) >>> 6;
+        long head = -1L << from;
+        long tail = -1L >>> -to;
+        if (first == last) {
+            return (occupiedWord(first) & head & tail) != 0;
+        }
+        if ((occupiedWord(first) & head) != 0
+                || (occupiedWord(last) & tail) != 0) {
+            return true;
+        }
+        for (int w = first + 1; w < last; w++) {
+            if (occupiedWord(w) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -8,6 +8,9 @@ import battleship.model.Board;
  * A place in a game board. Each place has a pair of 1-based indices---
  * <code>x</code> for column and <code>y</code> for row---that uniquely
  * identify it in the board. A place can be placed on by a battleship.
+ * The shot and ship of a place are stored in the {@link Grid} of its
+ * board; a place is a view of one cell of the grid, and two places
+ * are equal if they are views of the same cell.
  * 
  * @author cheon
  * @see Board
@@ -20,14 +23,11 @@ public class Place {
     /** 1-based row index of this place. */
     public final int y;
 
-    /** Is this place hit? */
-    private boolean isHit;
-
-    /** Battleship placed on this place. */
-    private Ship ship;
+    /** Index of this place in the grid of its board. */
+    final int index;
 
     /** Board which this place belongs to. */
-    private Board battleBoard;
+    private final Board battleBoard;
     
     /**
      * Create a new place with the given indices belonging to the given
@@ -41,6 +41,7 @@ public class Place {
         this.x = x;
         this.y = y;
         this.battleBoard = battleBoard;
+        this.index = (y - 1) * battleBoard.size() + (x - 1);
     }
     
     /** Return the 1-based column index of this place. 
@@ -61,19 +62,27 @@ public class Place {
      * @return True if this place was shot; false otherwise
      */
     public boolean isHit() {
-    	return isHit;
+    	return battleBoard.grid().isHit(index);
     }
     
     /** Is this place hit and does it have a ship? 
      * @return True if this place has a ship and was shot; false otherwise
      */
     public boolean isHitShip() {
-    	return isHit && !isEmpty();
+    	return isHit() && !isEmpty();
     }
     
-    /** Hit this place. */
+    /** Hit this place. The shot that claims this place, and the one
+     * that sinks its ship, update the Zobrist hash of the board. */
     public void hit() {
-    	isHit = true;
+    	if (battleBoard.grid().hit(index)) {
+    	    Ship ship = ship();
+    	    battleBoard.toggleZobrist(battleBoard.shotKey(this));
+    	    if (ship != null && ship.recordHit(this)) {
+    	        battleBoard.countSunk(1);
+    	        battleBoard.toggleZobrist(battleBoard.sunkKeys(ship));
+    	    }
+    	}
     	battleBoard.hit(this);
     }
     
@@ -82,7 +91,7 @@ public class Place {
      * @return True if a ship is placed on this place; false otherwise
      */
     public boolean hasShip() {
-    	return ship != null;
+    	return battleBoard.grid().isOccupied(index);
     }
     
     /** Is this place empty? I.e., no ship placed on it? 
@@ -90,7 +99,7 @@ public class Place {
      * @return True if no ship is placed on this place; false otherwise
      */
     public boolean isEmpty() {
-    	return ship == null;
+    	return !hasShip();
     }
     
     /** Place the given ship on this place.
@@ -99,7 +108,7 @@ public class Place {
      * @see Ship
      */
     public void placeShip(Ship ship) {
-    	this.ship = ship;
+    	battleBoard.grid().occupy(index, battleBoard.shipId(ship));
     	ship.addPlace(this);
     }
     
@@ -110,18 +119,47 @@ public class Place {
      * @return Battleship placed on this place or null
      */
     public Ship ship() {
-    	return ship;
+    	return battleBoard.shipAt(index);
     }
 
     /**
      * Reset this place. This method clears the shot made on this place 
-     * and remove the ship placed on it.
+     * and remove the ship placed on it. The Zobrist hash of the board
+     * forgets the shot, and the sinking of the ship if it was sunk.
      */
     public void reset() {
-        isHit = false;
+        Ship ship = ship();
+        if (isHit()) {
+            battleBoard.toggleZobrist(battleBoard.shotKey(this));
+        }
         if (ship != null) {
-            ship.removePlace(this);
-            ship = null;
+            if (ship.isSunk()) {
+                battleBoard.countSunk(-1);
+                battleBoard.toggleZobrist(battleBoard.sunkKeys(ship));
+            }
+            ship.removePlace(this); // while the shot is still recorded
         }
+        battleBoard.grid().clear(index);
+    }
+
+    /** Return the board of this place. */
+    Board board() {
+        return battleBoard;
+    }
+
+    /** Is the given object a place of the same board at the same
+     * indices? */
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof Place)) {
+            return false;
+        }
+        Place place = (Place) other;
+        return place.battleBoard == battleBoard && place.index == index;
+    }
+
+    @Override
+    public int hashCode() {
+        return index;
     }
 }
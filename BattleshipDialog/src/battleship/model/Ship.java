@@ -28,6 +28,16 @@ public class Ship {
      */
     private List<Place> places;
 
+    /** Number of places of this ship that are hit, as counted by a
+     * board shot from one thread; a board shot from several threads
+     * keeps its own counts. See the addHits method of the Board class.
+     *
+     * <pre>
+     * INV: 0 &lt;= hits &lt;= places.size()
+     * </pre>
+     */
+    private int hits;
+
     /**
      * Create a new ship of the given name and size. Initially, the 
      * created ship is not placed in a board.
@@ -114,8 +124,34 @@ public class Ship {
      * @return True if this ship is sunk; false otherwise
      */
     public boolean isSunk() {
-        return size == places.size()
-                && places.stream().allMatch(p -> p.isHit());
+        return size == places.size() && size > 0
+                && head().board().hits(this) == size;
+    }
+
+    /**
+     * Record that the given place of this ship was hit. This method
+     * should be used only from a place when it is hit for the first time;
+     * see the hit method of the Place class. Of concurrent hits, only
+     * the one that sinks this ship returns true.
+     *
+     * @param place Place of this ship that was hit
+     * @return True if this hit sank this ship; false otherwise
+     */
+    boolean recordHit(Place place) {
+        return place.board().addHits(this, 1) == size
+                && places.size() == size;
+    }
+
+    /** Return the number of places of this ship that are hit, as counted
+     * by a board that keeps no counts of its own. */
+    int hits() {
+        return hits;
+    }
+
+    /** Add the given number to the places of this ship that are hit, and
+     * return the new number. */
+    int addHits(int delta) {
+        return hits += delta;
     }
 
     /**
@@ -128,6 +164,9 @@ public class Ship {
     public void addPlace(Place place) {
         if (!places.contains(place)) {
             places.add(place);
+            if (place.isHit()) {
+                place.board().addHits(this, 1);
+            }
         }
         if (place.ship() != this) {
             place.placeShip(this);
@@ -144,7 +183,9 @@ public class Ship {
      * @see Place
      */
     public void removePlace(Place place) {
-        places.remove(place);
+        if (places.remove(place) && place.isHit()) {
+            place.board().addHits(this, -1);
+        }
     }
 	
     /** Return true if this ship is placed in a board. 
@@ -158,10 +199,17 @@ public class Ship {
     /** Clear the places of this ship. This method makes this ship
      *  be unplaced in a board. */
     public void removePlaces() {
-        List<Place> copies = new ArrayList<>(places);
-        for (Place p : copies) {
-            p.reset(); // will call back this (removePlace) method.
+        for (int i = places.size() - 1; i >= 0; i--) {
+            places.get(i).reset(); // will call back this (removePlace) method.
         }
     }
+
+    /** Forget the places of this ship without resetting them. This
+     * method should be used only from a board whose places are all
+     * cleared at once; see the reset method of the Board class. */
+    void clear() {
+        places.clear();
+        hits = 0;
+    }
     
 }
@@ -0,0 +1,426 @@
+package battleship.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Append-only journal of games, written to a memory-mapped file. For
+ * every game, the journal holds the snapshot of the board when the game
+ * starts, i.e., the layout of the fleet, followed by one record per shot
+ * with the place shot, the number of shots, the outcome and the time.
+ * A shot record is stored straight into the mapped file, so recording a
+ * shot allocates nothing and makes no system call; the file is mapped
+ * one region at a time, and only moving to the next region does.
+ *
+ * <p>The journal is a board change listener. Call
+ * <code>startGame</code> once the ships of a board are placed, e.g.,
+ * after every reset, and the journal records the shots made to the
+ * board until the next game is started. Use a {@link Reader} to list the
+ * games of a journal and rebuild a board at any shot of a game.
+ *
+ * <p>The file consists of records, each starting with a tag byte:
+ * <ul>
+ * <li><code>GAME</code>: an int length and a snapshot of that many
+ *     bytes, as written by {@link BoardCodec};</li>
+ * <li><code>SHOT</code>: a byte outcome (<code>MISS</code>,
+ *     <code>HIT</code> or <code>SUNK</code>), an int place index
+ *     <code>(y-1)*size + (x-1)</code>, an int number of shots and a long
+ *     time in milliseconds since the epoch.</li>
+ * </ul>
+ * A zero tag ends the journal, and the file beyond the journal is
+ * zero-filled. A record is appended over the end tag: its body is
+ * written first, then the end tag after it, and its own tag last. So
+ * until a record is complete, the journal still ends where it started,
+ * and after a crash it ends after the last complete record.
+ *
+ * @see BoardCodec
+ */
+public class ShotJournal extends Board.BoardChangeAdapter implements Closeable {
+
+    /** Tags of records. */
+    public static final byte END = 0, GAME = 1, SHOT = 2;
+
+    /** Outcomes of shots. */
+    public static final byte MISS = 0, HIT = 1, SUNK = 2;
+
+    /** Bytes of a shot record. */
+    public static final int SHOT_BYTES = 1 + 1 + 4 + 4 + 8;
+
+    /** Bytes of the file mapped at a time. */
+    public static final int REGION_SIZE = 1 << 20;
+
+    /** Channel of the journal file. */
+    private final FileChannel channel;
+
+    /** Region of the file being written. */
+    private MappedByteBuffer region;
+
+    /** Offset in the file of the start of <code>region</code>. */
+    private long regionStart;
+
+    /** Board whose shots are recorded, or null. */
+    private Board board;
+
+    /**
+     * Open the given journal file for appending, creating it if needed.
+     * Records are appended after the last record in the file.
+     *
+     * @param path Journal file
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    public ShotJournal(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long end = 0;
+        if (channel.size() > 0) {
+            try (Reader reader = new Reader(channel)) {
+                end = reader.end;
+            }
+        }
+        map(end, REGION_SIZE);
+    }
+
+    /** Map the region of the given size starting at the given offset. */
+    private void map(long start, int size) throws IOException {
+        regionStart = start;
+        region = channel.map(FileChannel.MapMode.READ_WRITE, start, size);
+    }
+
+    /** Make sure that the given number of bytes can be written, moving
+     * to the next region if needed. */
+    private void reserve(int bytes) {
+        if (region.remaining() <= bytes) { // keep room for the end tag
+            try {
+                map(regionStart + region.position(),
+                        Math.max(REGION_SIZE, bytes + 1));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Start recording a game on the given board, whose ships are placed.
+     * The snapshot of the board is appended, and the shots made to it
+     * from now on are recorded. Shots made to the board of a previous
+     * game are no longer recorded.
+     *
+     * @param board Board of the game
+     */
+    public void startGame(Board board) {
+        if (this.board != null && this.board != board) {
+            this.board.removeBoardChangeListener(this);
+        }
+        this.board = board;
+        int length = BoardCodec.encodedSize(board);
+        reserve(1 + 4 + length);
+        int start = region.position();
+        region.position(start + 1);
+        region.putInt(length);
+        BoardCodec.write(board, region);
+        region.put(region.position(), END);
+        region.put(start, GAME);
+        board.addBoardChangeListener(this);
+    }
+
+    /** Append a shot record for the given place. */
+    @Override
+    public void hit(Place place, int numOfShots) {
+        reserve(SHOT_BYTES);
+        byte outcome = place.isEmpty() ? MISS
+                : place.ship().isSunk() ? SUNK : HIT;
+        int start = region.position();
+        region.position(start + 1);
+        region.put(outcome);
+        region.putInt(place.index);
+        region.putInt(numOfShots);
+        region.putLong(System.currentTimeMillis());
+        region.put(region.position(), END);
+        region.put(start, SHOT);
+    }
+
+    /** Write the journal through to the storage device. */
+    public void force() {
+        region.force();
+    }
+
+    /** Stop recording and close the journal file. */
+    @Override
+    public void close() throws IOException {
+        if (board != null) {
+            board.removeBoardChangeListener(this);
+            board = null;
+        }
+        region.force();
+        channel.close();
+    }
+
+    /**
+     * Reader of the games of a journal. The journal is indexed when the
+     * reader is opened. It is mapped read-only one region at a time, so
+     * a journal may be larger than a single mapping. A reader is meant
+     * to be used by one thread at a time.
+     */
+    public static class Reader implements Closeable {
+
+        /** Channel of the journal. */
+        private final FileChannel channel;
+
+        /** Close the channel with this reader? */
+        private final boolean owned;
+
+        /** Length of the journal file. */
+        private final long size;
+
+        /** Mapped region of the journal file, and its offset. */
+        private ByteBuffer window;
+        private long windowStart;
+
+        /** Offset of the end tag, i.e., the length of the journal. */
+        final long end;
+
+        /** Offset of the snapshot of each game. */
+        private long[] snapshots = new long[16];
+
+        /** Offset of the first shot record of each game. */
+        private long[] firstShots = new long[16];
+
+        /** Number of shot records of each game. */
+        private int[] shots = new int[16];
+
+        /** Number of games. */
+        private int games;
+
+        /**
+         * Open the given journal file for reading.
+         *
+         * @param path Journal file
+         * @throws IOException if the file cannot be read or is corrupt
+         */
+        public Reader(Path path) throws IOException {
+            this(FileChannel.open(path, StandardOpenOption.READ), true);
+        }
+
+        /** Open a reader of the given channel, which stays open. */
+        Reader(FileChannel channel) throws IOException {
+            this(channel, false);
+        }
+
+        private Reader(FileChannel channel, boolean owned) throws IOException {
+            this.channel = channel;
+            this.owned = owned;
+            this.size = channel.size();
+            long pos = 0;
+            try {
+                while (pos < size) {
+                    int at = map(pos, 1);
+                    byte tag = window.get(at);
+                    if (tag == END) {
+                        break;
+                    }
+                    if (tag == GAME && pos + 5 <= size) {
+                        at = map(pos + 1, 4);
+                        int length = window.getInt(at);
+                        if (length < 0 || pos + 5 + length > size) {
+                            break; // truncated file
+                        }
+                        add(pos + 5, pos + 5 + length);
+                        pos += 5 + length;
+                    } else if (tag == SHOT && games > 0) {
+                        if (pos + SHOT_BYTES > size) {
+                            break; // truncated file
+                        }
+                        shots[games - 1]++;
+                        pos += SHOT_BYTES;
+                    } else if (tag == GAME) {
+                        break; // truncated file
+                    } else {
+                        throw new IOException("Corrupt journal at " + pos);
+                    }
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+            end = pos;
+        }
+
+        /** Map a region of the file containing the given number of bytes
+         * at the given offset, unless the current one does, and return
+         * the index of the offset in the region. */
+        private int map(long offset, int length) throws IOException {
+            if (window == null || offset < windowStart
+                    || offset + length > windowStart + window.limit()) {
+                windowStart = offset;
+                window = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                        Math.min(size - offset, Math.max(REGION_SIZE, length)));
+            }
+            return (int) (offset - windowStart);
+        }
+
+        /** Map the given field of the given shot record, and return the
+         * region it is mapped in, positioned at the field. */
+        private ByteBuffer field(int game, int shot, int offset, int length) {
+            try {
+                int at = map(shotOffset(game, shot) + offset, length);
+                window.position(at);
+                return window;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /** Index a game with the given snapshot and shot offsets. */
+        private void add(long snapshot, long firstShot) {
+            if (games == snapshots.length) {
+                snapshots = Arrays.copyOf(snapshots, 2 * games);
+                firstShots = Arrays.copyOf(firstShots, 2 * games);
+                shots = Arrays.copyOf(shots, 2 * games);
+            }
+            snapshots[games] = snapshot;
+            firstShots[games] = firstShot;
+            shots[games++] = 0;
+        }
+
+        /** Return the number of games in the journal.
+         * @return Number of games
+         */
+        public int games() {
+            return games;
+        }
+
+        /** Return the number of shots recorded for the given game.
+         * @param game 0-based game index
+         * @return Number of shot records of the game
+         */
+        public int shots(int game) {
+            checkGame(game);
+            return shots[game];
+        }
+
+        /** Return the index <code>(y-1)*size + (x-1)</code> of the place
+         * of the given shot.
+         * @param game 0-based game index
+         * @param shot 0-based shot index
+         * @return Index of the place shot
+         */
+        public int place(int game, int shot) {
+            return field(game, shot, 2, 4).getInt();
+        }
+
+        /** Return the outcome of the given shot: <code>MISS</code>,
+         * <code>HIT</code> or <code>SUNK</code>.
+         * @param game 0-based game index
+         * @param shot 0-based shot index
+         * @return Outcome of the shot
+         */
+        public byte outcome(int game, int shot) {
+            return field(game, shot, 1, 1).get();
+        }
+
+        /** Return the number of shots made to the board after the given
+         * shot.
+         * @param game 0-based game index
+         * @param shot 0-based shot index
+         * @return Number of shots
+         */
+        public int numOfShots(int game, int shot) {
+            return field(game, shot, 6, 4).getInt();
+        }
+
+        /** Return the time of the given shot.
+         * @param game 0-based game index
+         * @param shot 0-based shot index
+         * @return Milliseconds since the epoch
+         */
+        public long time(int game, int shot) {
+            return field(game, shot, 10, 8).getLong();
+        }
+
+        /**
+         * Rebuild the board of the given game after its first
+         * <code>shots</code> shots, on a new board with the default fleet.
+         *
+         * @param game 0-based game index
+         * @param shots Number of shots to replay, from 0 to
+         *            <code>shots(game)</code>
+         * @return Board after the shots
+         */
+        public Board board(int game, int shots) {
+            checkGame(game);
+            Board board = BoardCodec.read(snapshot(game));
+            replay(game, shots, board);
+            return board;
+        }
+
+        /**
+         * Rebuild the board of the given game after its first
+         * <code>shots</code> shots, on the given board, whose fleet must
+         * be that of the game. The listeners of the board are notified
+         * of the replayed shots but not of the restored layout.
+         *
+         * @param game 0-based game index
+         * @param shots Number of shots to replay, from 0 to
+         *            <code>shots(game)</code>
+         * @param board Board to be rebuilt
+         */
+        public void board(int game, int shots, Board board) {
+            checkGame(game);
+            BoardCodec.read(snapshot(game), board);
+            replay(game, shots, board);
+        }
+
+        /** Return the snapshot of the given game, without copying it. */
+        private ByteBuffer snapshot(int game) {
+            try {
+                int index = map(snapshots[game],
+                        (int) (firstShots[game] - snapshots[game]));
+                ByteBuffer snapshot = window.duplicate();
+                snapshot.position(index);
+                return snapshot;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /** Make the first shots of the given game to the given board. */
+        private void replay(int game, int shots, Board board) {
+            if (shots < 0 || shots > this.shots[game]) {
+                throw new IndexOutOfBoundsException("Shot " + shots);
+            }
+            int size = board.size();
+            for (int i = 0; i < shots; i++) {
+                int index = place(game, i);
+                board.hit(board.at(index % size + 1, index / size + 1));
+            }
+        }
+
+        private void checkGame(int game) {
+            if (game < 0 || game >= games) {
+                throw new IndexOutOfBoundsException("Game " + game);
+            }
+        }
+
+        private long shotOffset(int game, int shot) {
+            checkGame(game);
+            if (shot < 0 || shot >= shots[game]) {
+                throw new IndexOutOfBoundsException("Shot " + shot);
+            }
+            return firstShots[game] + (long) shot * SHOT_BYTES;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (owned) {
+                channel.close();
+            }
+        }
+    }
+}
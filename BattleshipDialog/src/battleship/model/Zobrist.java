@@ -0,0 +1,65 @@
+package battleship.model;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Zobrist keys of the observable state of a board: one random key per
+ * place and per outcome of a shot at it, a miss, a hit on a ship afloat
+ * or a hit on a sunk ship. The hash of a board is the exclusive or of
+ * the keys of its shot places, so a shot updates it with one exclusive
+ * or, and the sinking of a ship with one per place of the ship.
+ *
+ * <p>The keys of a size are drawn from a generator seeded with the
+ * size, so they are the same for all the boards of that size, in this
+ * and every other run, and a hash can be used as the key of a position
+ * shared by several boards, threads or processes. The keys of each size
+ * are created once and shared.
+ *
+ * @see Board#zobrist()
+ */
+public final class Zobrist {
+
+    /** Outcomes of shots, indexing the keys of a place. */
+    public static final int MISS = 0, HIT = 1, SUNK = 2;
+
+    /** Keys of each board size, 3 per place. */
+    private static final ConcurrentMap<Integer, long[]> KEYS =
+            new ConcurrentHashMap<>();
+
+    private Zobrist() {
+    }
+
+    /**
+     * Return the keys of boards of the given size, indexed by
+     * <code>3*index + outcome</code>.
+     *
+     * @param size Dimension of a board
+     * @return Keys of the places of a board of the given size
+     */
+    static long[] keys(int size) {
+        return KEYS.computeIfAbsent(size, s -> {
+            SplittableRandom random = new SplittableRandom(s);
+            long[] keys = new long[3 * s * s];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = random.nextLong();
+            }
+            return keys;
+        });
+    }
+
+    /**
+     * Return the key of the given outcome of a shot at the given place of
+     * a board of the given size.
+     *
+     * @param size Dimension of the board
+     * @param index Index of the place, <code>(y-1)*size + (x-1)</code>
+     * @param outcome <code>MISS</code>, <code>HIT</code> or
+     *            <code>SUNK</code>
+     * @return Key to be combined by exclusive or
+     */
+    public static long key(int size, int index, int outcome) {
+        return keys(size)[3 * index + outcome];
+    }
+}
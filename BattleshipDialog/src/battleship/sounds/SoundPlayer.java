@@ -0,0 +1,115 @@
+/*
+ * This class plays the short sounds of the game. Every sound file is
+ * decoded once, when the player is created, and a small pool of clips
+ * is opened on the decoded samples. Playing a sound only rewinds and
+ * starts a free clip of its pool, on a background thread, so the
+ * caller never waits for audio I/O. A sound requested while all of
+ * its clips are still playing is dropped. Clips are reused for the
+ * whole session and closed by close().
+ */
+
+package battleship.sounds;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Clip;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+public class SoundPlayer {
+	//clips per sound, i.e., how many copies of a sound may overlap
+	static final int POOL_SIZE = 3;
+
+	//pools of opened clips, by file name
+	private final Map<String, Clip[]> pools = new HashMap<>();
+	//thread that starts the clips
+	private final ExecutorService executor;
+
+	public SoundPlayer(String dir, String... filenames){
+		for(String name: filenames){
+			try{
+				this.pools.put(name, openPool(new File(dir + name)));
+			} catch(UnsupportedAudioFileException | IOException | LineUnavailableException
+					| IllegalArgumentException e){
+				//no sound for this file, e.g., no audio device
+			}
+		}
+		this.executor = Executors.newSingleThreadExecutor(r -> {
+			Thread t = new Thread(r, "battleship-sound");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	//decode the file once and open a pool of clips on its samples
+	private static Clip[] openPool(File file)
+			throws UnsupportedAudioFileException, IOException, LineUnavailableException {
+		AudioFormat format;
+		byte[] data;
+		try(AudioInputStream stream = AudioSystem.getAudioInputStream(file)){
+			format = stream.getFormat();
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			for(int n; (n = stream.read(buffer)) > 0; )
+				out.write(buffer, 0, n);
+			data = out.toByteArray();
+		}
+		Clip[] pool = new Clip[POOL_SIZE];
+		try{
+			for(int i = 0; i < pool.length; i++){
+				pool[i] = AudioSystem.getClip();
+				pool[i].open(format, data, 0, data.length);
+			}
+		} catch(LineUnavailableException | IllegalArgumentException e){
+			closeAll(pool);
+			throw e;
+		}
+		return pool;
+	}
+
+	//play the given sound in the background, or drop it if all of its
+	//clips are busy or the player is closed
+	public void play(String filename){
+		Clip[] pool = this.pools.get(filename);
+		if(pool == null)
+			return;
+		try{
+			this.executor.execute(() -> {
+				for(Clip clip: pool){
+					if(!clip.isActive()){
+						clip.stop();
+						clip.setFramePosition(0);
+						clip.start();
+						return;
+					}
+				}
+			});
+		} catch(RejectedExecutionException e){
+			//closed meanwhile; a shot must not fail for a sound
+		}
+	}
+
+	//stop playing and release all the clips
+	public void close(){
+		this.executor.shutdownNow();
+		for(Clip[] pool: this.pools.values())
+			closeAll(pool);
+		this.pools.clear();
+	}
+
+	private static void closeAll(Clip[] pool){
+		for(Clip clip: pool)
+			if(clip != null)
+				clip.close();
+	}
+}
@@ -0,0 +1,51 @@
+/*
+ * This class observes a board the way a strategy may: it reports the
+ * outcome of the shots made to it, and nothing about the ships that
+ * were not hit. It reads the board on every call, so it is always
+ * up to date.
+ */
+
+package battleship.strat;
+
+import battleship.model.Board;
+import battleship.model.Place;
+import battleship.model.Ship;
+
+public class BoardObservation implements Observation {
+	Board board;
+	int size;
+
+	public BoardObservation(Board board){
+		this.board = board;
+		this.size = board.size();
+	}
+	public int size(){
+		return this.size;
+	}
+	public int numOfShots(){
+		return this.board.numOfShots();
+	}
+	public int state(int place){
+		Place p = this.board.at(place%this.size+1, place/this.size+1);
+		if(!p.isHit())
+			return UNKNOWN;
+		if(p.isEmpty())
+			return MISS;
+		return p.ship().isSunk() ? SUNK : HIT;
+	}
+	public long zobrist(){
+		return this.board.zobrist();
+	}
+	public int[] remainingShips(){
+		int count = 0;
+		for(Ship s: this.board.ships())
+			if(!s.isSunk())
+				count++;
+		int[] lengths = new int[count];
+		int i = 0;
+		for(Ship s: this.board.ships())
+			if(!s.isSunk())
+				lengths[i++] = s.size();
+		return lengths;
+	}
+}
@@ -0,0 +1,214 @@
+/*
+ * This class implements a probability-density strategy for the
+ * computer. For every place it keeps the number of placements of
+ * the remaining ships that are consistent with the shots seen so
+ * far, and it shoots the unknown place with the highest count.
+ * Placements covering a hit that is not sunk yet are weighted up,
+ * so the strategy finishes off a ship once it has found it.
+ * After a shot only the placements crossing the shot place are
+ * updated; the whole board is revisited only when a ship sinks.
+ * The first moves are played from the opening book, and near the
+ * end of a game the EndgameSolver finds the exact best shot instead,
+ * when it can within the deadline.
+ * Shots are encoded as (x-1)*size + (y-1), as in SmartStrategy.
+ */
+
+package battleship.strat;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import battleship.model.Place;
+import battleship.model.Ship;
+
+public class DensityStrategy implements Strategy {
+	//weight of each hit (not sunk) covered by a placement
+	static final int TARGET_WEIGHT = 64;
+	//states of a place
+	static final byte UNKNOWN = 0;
+	static final byte MISS = 1;
+	static final byte HIT = 2;
+	static final byte SUNK = 3;
+
+	int size;
+	byte[] state;
+	//number of consistent, weighted placements covering each place
+	int[] density;
+	//number of ships not sunk yet, indexed by ship length
+	int[] remaining;
+	//number of ships of the fleet, indexed by ship length
+	int[] fleet;
+	//shot chosen by checkShot, or -1
+	int next = -1;
+	//shot made but not reported as hit or sunk yet, or -1
+	int pending = -1;
+	Random random;
+	//opening moves, or null
+	OpeningBook book = OpeningBook.shared();
+	//exact solver for small positions, or null
+	EndgameSolver endgame = new EndgameSolver();
+
+	public DensityStrategy(int size, Iterable<Ship> fleet){
+		this(size, fleet, new Random());
+	}
+	public DensityStrategy(int size, Iterable<Ship> fleet, Random random){
+		this.size = size;
+		this.random = random;
+		this.state = new byte[size*size];
+		this.density = new int[size*size];
+		int longest = 0;
+		for(Ship ship: fleet)
+			longest = Math.max(longest, ship.size());
+		this.fleet = new int[longest+1];
+		for(Ship ship: fleet)
+			this.fleet[ship.size()]++;
+		this.remaining = new int[longest+1];
+		reset();
+	}
+	//start a new game with the whole fleet afloat
+	public void reset(){
+		Arrays.fill(this.state, UNKNOWN);
+		Arrays.fill(this.density, 0);
+		System.arraycopy(this.fleet, 0, this.remaining, 0, this.fleet.length);
+		this.next = -1;
+		this.pending = -1;
+		for(int len = 1; len < this.remaining.length; len++)
+			if(this.remaining[len] > 0)
+				addAll(len, this.remaining[len]);
+	}
+	//play the moves of the given book, or none if null
+	public void setBook(OpeningBook book){
+		this.book = book;
+	}
+	//use the given solver near the end of a game, or none if null
+	public void setEndgame(EndgameSolver endgame){
+		this.endgame = endgame;
+	}
+	//keep the positions solved near the end of a game in the given cache
+	public void setCache(PositionCache cache){
+		if(this.endgame != null)
+			this.endgame.setCache(cache);
+	}
+	//Strategy: the places it uses are transposed shots
+	public int nextShot(Observation observation, long deadline){
+		resolvePending();
+		int place = this.book == null ? -1 : this.book.move(observation);
+		if(place < 0 && this.endgame != null)
+			place = this.endgame.bestShot(observation, deadline);
+		if(place >= 0){
+			this.pending = SmartStrategy.transpose(place, this.size);
+			this.next = -1;
+			return place;
+		}
+		return SmartStrategy.transpose(doShot(), this.size);
+	}
+	//the outcomes are those of the places reported, which need not be
+	//the places returned by nextShot
+	public void hit(int place){
+		notifyHit(SmartStrategy.transpose(place, this.size));
+	}
+	public void miss(int place){
+		this.pending = -1;
+		update(SmartStrategy.transpose(place, this.size), MISS);
+	}
+	public void sunk(int place, Ship ship){
+		Place head = ship.head();
+		notifySunk((head.getX()-1)*this.size + head.getY()-1, ship.size(), ship.isHorizontal());
+	}
+	int checkShot(){
+		resolvePending();
+		if(this.next < 0 || this.state[this.next] != UNKNOWN)
+			this.next = best();
+		return this.next;
+	}
+	int doShot(){
+		int shot = checkShot();
+		this.pending = shot;
+		this.next = -1;
+		return shot;
+	}
+	void notifyHit(int place){
+		this.pending = -1;
+		update(place, HIT);
+	}
+	//head is the shot of the first place of the sunk ship; a ship
+	//reported sunk again is counted once
+	void notifySunk(int head, int length, boolean horizontal){
+		this.pending = -1;
+		if(this.state[head] == SUNK)
+			return;
+		int step = horizontal ? this.size : 1;
+		for(int k = 0, c = head; k < length; k++, c += step)
+			update(c, SUNK);
+		if(length < this.remaining.length && this.remaining[length] > 0){
+			addAll(length, -1);
+			this.remaining[length]--;
+		}
+	}
+	//a shot not reported as hit or sunk was a miss
+	void resolvePending(){
+		if(this.pending >= 0){
+			update(this.pending, MISS);
+			this.pending = -1;
+		}
+	}
+	//unknown place with the highest density; the scan starts at a
+	//random place, so ties are broken at random
+	int best(){
+		int n = this.state.length;
+		int best = -1;
+		int max = -1;
+		for(int k = 0, c = this.random.nextInt(n); k < n; k++, c = c+1 == n ? 0 : c+1){
+			if(this.state[c] == UNKNOWN && this.density[c] > max){
+				max = this.density[c];
+				best = c;
+			}
+		}
+		return best;
+	}
+	//change the state of a place, updating only the placements crossing it
+	void update(int place, byte newState){
+		if(this.state[place] == newState)
+			return;
+		addCrossing(place, -1);
+		this.state[place] = newState;
+		addCrossing(place, 1);
+	}
+	//add sign * weight of every placement crossing the place
+	void addCrossing(int place, int sign){
+		int x = place/this.size;
+		int y = place%this.size;
+		for(int len = 1; len < this.remaining.length; len++){
+			if(this.remaining[len] == 0)
+				continue;
+			int count = this.remaining[len];
+			for(int y0 = Math.max(0, y-len+1); y0 <= Math.min(y, this.size-len); y0++)
+				addWindow(place-(y-y0), len, 1, sign*count);
+			for(int x0 = Math.max(0, x-len+1); x0 <= Math.min(x, this.size-len); x0++)
+				addWindow(place-(x-x0)*this.size, len, this.size, sign*count);
+		}
+	}
+	//add factor * weight of one ship of the given length at every placement
+	void addAll(int len, int factor){
+		for(int x = 0; x < this.size; x++)
+			for(int y = 0; y + len <= this.size; y++)
+				addWindow(x*this.size+y, len, 1, factor);
+		for(int x = 0; x + len <= this.size; x++)
+			for(int y = 0; y < this.size; y++)
+				addWindow(x*this.size+y, len, this.size, factor);
+	}
+	//add factor * weight of the placement to each of its places
+	void addWindow(int start, int len, int step, int factor){
+		int hits = 0;
+		for(int k = 0, c = start; k < len; k++, c += step){
+			byte s = this.state[c];
+			if(s == MISS || s == SUNK)
+				return;
+			if(s == HIT)
+				hits++;
+		}
+		int weight = factor*(1 + TARGET_WEIGHT*hits);
+		for(int k = 0, c = start; k < len; k++, c += step)
+			this.density[c] += weight;
+	}
+}
@@ -0,0 +1,395 @@
+/*
+ * This class solves the end of a game exactly. It enumerates every
+ * layout of the ships not sunk yet that is consistent with what can
+ * be seen: no ship on a miss or on a sunk ship, no two ships
+ * overlapping, and every hit covered. From the layouts it computes
+ * the exact probability of a ship on every place, and the best shot
+ * is the unknown place covered by most layouts.
+ * Placements and occupied places are bitmasks of long words, so an
+ * overlap test takes one AND per word. Ships are placed longest
+ * first, and ships of the same length in increasing placement order,
+ * so a set of identical ships is enumerated once. The number of
+ * layouts completing a partial layout depends only on the places it
+ * occupies, so it is memoized; the coverage of every place is then
+ * summed over the distinct partial layouts, level by level.
+ * The last ship is counted in place, without building its layouts.
+ * The solver only runs when the number of placements, multiplied
+ * over the ships, is below a threshold, and it gives up when it
+ * tries too many placements or reaches the deadline.
+ * Solved positions may be kept in a PositionCache, keyed by the
+ * Zobrist hash of the observation mixed with the lengths of the ships
+ * afloat. Only the solver puts positions in the cache, so a cached
+ * position is always solved exactly.
+ * Places are indexed (y-1)*size + (x-1), as in Observation.
+ */
+
+package battleship.strat;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class EndgameSolver {
+	//default largest search space solved
+	public static final long DEFAULT_THRESHOLD = 100_000L;
+	//default largest number of placements tried
+	public static final long DEFAULT_NODE_CAP = 2_000_000L;
+	//placements tried between two looks at the clock
+	static final int CLOCK_INTERVAL = 4096;
+
+	long threshold;
+	long nodeCap;
+
+	//problem being solved
+	int size;
+	int words;
+	//lengths of the ships to place, longest first
+	int[] ships;
+	//sum of the lengths of ships[k..]
+	int[] capacity;
+	//hits to be covered, and those left to the last ship
+	long[] hits;
+	long[] uncovered;
+	//legal placements of each ship length: first place, step and mask
+	int[][] starts;
+	int[][] steps;
+	long[][] masks;
+	//number of layouts completing each partial layout
+	Map<State, Long> memo;
+	long nodes;
+	long deadline;
+
+	//results of the last solve
+	long layouts;
+	long[] coverage;
+	//solved positions, or null
+	PositionCache cache;
+	float[] probabilities;
+
+	public EndgameSolver(){
+		this(DEFAULT_THRESHOLD, DEFAULT_NODE_CAP);
+	}
+	public EndgameSolver(long threshold, long nodeCap){
+		this.threshold = threshold;
+		this.nodeCap = nodeCap;
+	}
+
+	//a partial layout: ships[0..k) placed on the occupied places, the
+	//last at placement min-1 if ships[k] is of the same length
+	static final class State {
+		final int k;
+		final int min;
+		final long[] occupied;
+		final int hash;
+		State(int k, int min, long[] occupied){
+			this.k = k;
+			this.min = min;
+			this.occupied = occupied;
+			this.hash = 31*(31*k + min) + Arrays.hashCode(occupied);
+		}
+		public int hashCode(){
+			return this.hash;
+		}
+		public boolean equals(Object o){
+			if(!(o instanceof State))
+				return false;
+			State s = (State) o;
+			return this.k == s.k && this.min == s.min && Arrays.equals(this.occupied, s.occupied);
+		}
+	}
+
+	//thrown when a cap is reached
+	@SuppressWarnings("serial")
+	static class Abort extends RuntimeException {
+		Abort(){
+			super(null, null, false, false);
+		}
+	}
+
+	//keep the solved positions in the given cache, or none if null
+	public void setCache(PositionCache cache){
+		this.cache = cache;
+	}
+
+	//the unknown place covered by most layouts, or -1 if the position
+	//is not solved because it is too large or a cap was reached
+	public int bestShot(Observation observation, long deadline){
+		int n = observation.size()*observation.size();
+		if(this.probabilities == null || this.probabilities.length != n)
+			this.probabilities = new float[n];
+		long key = this.cache == null ? 0 : key(observation);
+		if(this.cache != null && this.cache.get(key, this.probabilities))
+			return mostLikely(observation, this.probabilities);
+		if(!solve(observation, deadline))
+			return -1;
+		for(int c = 0; c < n; c++)
+			this.probabilities[c] = (float) probability(c);
+		if(this.cache != null)
+			this.cache.put(key, this.probabilities);
+		return mostLikely(observation, this.probabilities);
+	}
+
+	//key of a position in the cache: sunk ships of different lengths may
+	//cover the same places, so the lengths of the ships afloat are mixed
+	//into the hash of the places
+	static long key(Observation observation){
+		long fleet = 0;
+		for(int len: observation.remainingShips())
+			fleet += mix(len);
+		return observation.zobrist() ^ mix(fleet);
+	}
+	//the 64-bit finalizer of MurmurHash3
+	static long mix(long z){
+		z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+		z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		return z ^ (z >>> 33);
+	}
+
+	//the unknown place of highest probability, or -1 if there is none
+	static int mostLikely(Observation observation, float[] probabilities){
+		int best = -1;
+		for(int c = 0; c < probabilities.length; c++)
+			if(observation.state(c) == Observation.UNKNOWN
+					&& (best < 0 || probabilities[c] > probabilities[best]))
+				best = c;
+		return best;
+	}
+
+	//probability of a ship on the given place in the last solve
+	public double probability(int place){
+		return this.layouts == 0 ? 0 : (double) this.coverage[place] / this.layouts;
+	}
+
+	//enumerate the layouts consistent with the observation; return
+	//false if the search space is above the threshold or a cap was hit
+	public boolean solve(Observation observation, long deadline){
+		this.layouts = 0;
+		this.coverage = null;
+		if(!setUp(observation))
+			return false;
+		this.nodes = 0;
+		this.deadline = deadline;
+		this.memo = new HashMap<>();
+		try{
+			State root = new State(0, 0, new long[this.words]);
+			long total = count(root);
+			long[] coverage = new long[this.size*this.size];
+			if(total > 0)
+				sumCoverage(root, coverage);
+			this.layouts = total;
+			this.coverage = coverage;
+			return total > 0;
+		} catch(Abort e){
+			return false;
+		} finally{
+			this.memo = null;
+		}
+	}
+
+	//build the placements; return false if the search space is too large
+	boolean setUp(Observation observation){
+		this.size = observation.size();
+		int n = this.size*this.size;
+		this.words = (n + 63) >>> 6;
+		long[] blocked = new long[this.words];
+		this.hits = new long[this.words];
+		this.uncovered = new long[this.words];
+		for(int c = 0; c < n; c++){
+			int state = observation.state(c);
+			if(state == Observation.MISS || state == Observation.SUNK)
+				blocked[c >>> 6] |= 1L << c;
+			else if(state == Observation.HIT)
+				this.hits[c >>> 6] |= 1L << c;
+		}
+		this.ships = observation.remainingShips().clone();
+		if(this.ships.length == 0)
+			return false;
+		Arrays.sort(this.ships);
+		for(int i = 0, j = this.ships.length-1; i < j; i++, j--){
+			int t = this.ships[i];
+			this.ships[i] = this.ships[j];
+			this.ships[j] = t;
+		}
+		this.capacity = new int[this.ships.length+1];
+		for(int k = this.ships.length-1; k >= 0; k--)
+			this.capacity[k] = this.capacity[k+1] + this.ships[k];
+		int longest = this.ships[0];
+		this.starts = new int[longest+1][];
+		this.steps = new int[longest+1][];
+		this.masks = new long[longest+1][];
+		long space = 1;
+		for(int len: this.ships){
+			if(this.starts[len] == null)
+				placements(len, blocked);
+			space = multiply(space, this.starts[len].length);
+			if(space > this.threshold)
+				return false;
+		}
+		return true;
+	}
+
+	static long multiply(long a, long b){
+		long p = a*b;
+		return a != 0 && p/a != b ? Long.MAX_VALUE : p;
+	}
+
+	//find the placements of the given length off the blocked places
+	void placements(int len, long[] blocked){
+		int count = 0;
+		int[] starts = new int[2*this.size*this.size];
+		int[] steps = new int[starts.length];
+		for(int y = 0; y < this.size; y++){
+			for(int x = 0; x < this.size; x++){
+				if(x + len <= this.size && free(y*this.size + x, 1, len, blocked)){
+					starts[count] = y*this.size + x;
+					steps[count++] = 1;
+				}
+				if(len > 1 && y + len <= this.size && free(y*this.size + x, this.size, len, blocked)){
+					starts[count] = y*this.size + x;
+					steps[count++] = this.size;
+				}
+			}
+		}
+		this.starts[len] = Arrays.copyOf(starts, count);
+		this.steps[len] = Arrays.copyOf(steps, count);
+		long[] masks = new long[count*this.words];
+		for(int p = 0; p < count; p++)
+			for(int k = 0, c = starts[p]; k < len; k++, c += steps[p])
+				masks[p*this.words + (c >>> 6)] |= 1L << c;
+		this.masks[len] = masks;
+	}
+
+	static boolean free(int start, int step, int len, long[] blocked){
+		for(int k = 0, c = start; k < len; k++, c += step)
+			if((blocked[c >>> 6] & (1L << c)) != 0)
+				return false;
+		return true;
+	}
+
+	void visit(){
+		if(++this.nodes > this.nodeCap
+				|| this.nodes % CLOCK_INTERVAL == 0 && System.nanoTime() - this.deadline > 0)
+			throw new Abort();
+	}
+
+	//number of layouts completing the given partial layout
+	long count(State s){
+		if(s.k == this.ships.length)
+			return covers(s.occupied) ? 1 : 0;
+		if(s.k == this.ships.length-1)
+			return countLast(s, null, 0);
+		Long known = this.memo.get(s);
+		if(known != null)
+			return known;
+		long total = 0;
+		if(uncovered(s.occupied) <= this.capacity[s.k]){
+			int len = this.ships[s.k];
+			long[] masks = this.masks[len];
+			for(int p = s.min; p < this.starts[len].length; p++){
+				visit();
+				if(overlaps(masks, p, s.occupied))
+					continue;
+				total += count(child(s, p));
+			}
+		}
+		this.memo.put(s, total);
+		return total;
+	}
+
+	//number of placements of the last ship completing the given partial
+	//layout; each adds the given weight to the coverage, if any
+	long countLast(State s, long[] coverage, long weight){
+		int len = this.ships[s.k];
+		long[] masks = this.masks[len];
+		int left = 0;
+		for(int w = 0; w < this.words; w++){
+			this.uncovered[w] = this.hits[w] & ~s.occupied[w];
+			left += Long.bitCount(this.uncovered[w]);
+		}
+		if(left > len)
+			return 0;
+		long total = 0;
+		for(int p = s.min; p < this.starts[len].length; p++){
+			visit();
+			if(overlaps(masks, p, s.occupied) || !contains(masks, p, this.uncovered))
+				continue;
+			total++;
+			if(coverage != null)
+				for(int i = 0, cell = this.starts[len][p]; i < len; i++, cell += this.steps[len][p])
+					coverage[cell] += weight;
+		}
+		return total;
+	}
+
+	//add the coverage of every layout to the given counts, visiting the
+	//distinct partial layouts level by level with the number of ways
+	//each is reached
+	void sumCoverage(State root, long[] coverage){
+		Map<State, Long> level = new HashMap<>();
+		level.put(root, 1L);
+		for(int k = 0; k < this.ships.length-1; k++){
+			Map<State, Long> next = new HashMap<>();
+			int len = this.ships[k];
+			long[] masks = this.masks[len];
+			for(Map.Entry<State, Long> e: level.entrySet()){
+				State s = e.getKey();
+				long ways = e.getValue();
+				for(int p = s.min; p < this.starts[len].length; p++){
+					visit();
+					if(overlaps(masks, p, s.occupied))
+						continue;
+					State c = child(s, p);
+					long completions = count(c);
+					if(completions == 0)
+						continue;
+					long weight = ways*completions;
+					for(int i = 0, cell = this.starts[len][p]; i < len; i++, cell += this.steps[len][p])
+						coverage[cell] += weight;
+					next.merge(c, ways, Long::sum);
+				}
+			}
+			level = next;
+		}
+		for(Map.Entry<State, Long> e: level.entrySet())
+			countLast(e.getKey(), coverage, e.getValue());
+	}
+
+	State child(State s, int p){
+		int len = this.ships[s.k];
+		long[] occupied = s.occupied.clone();
+		for(int w = 0; w < this.words; w++)
+			occupied[w] |= this.masks[len][p*this.words + w];
+		int k = s.k+1;
+		int min = k < this.ships.length && this.ships[k] == len ? p+1 : 0;
+		return new State(k, min, occupied);
+	}
+
+	boolean overlaps(long[] masks, int p, long[] occupied){
+		for(int w = 0; w < this.words; w++)
+			if((masks[p*this.words + w] & occupied[w]) != 0)
+				return true;
+		return false;
+	}
+
+	boolean contains(long[] masks, int p, long[] places){
+		for(int w = 0; w < this.words; w++)
+			if((places[w] & ~masks[p*this.words + w]) != 0)
+				return false;
+		return true;
+	}
+
+	//number of hits not covered by the occupied places
+	int uncovered(long[] occupied){
+		int n = 0;
+		for(int w = 0; w < this.words; w++)
+			n += Long.bitCount(this.hits[w] & ~occupied[w]);
+		return n;
+	}
+
+	boolean covers(long[] occupied){
+		for(int w = 0; w < this.words; w++)
+			if((this.hits[w] & ~occupied[w]) != 0)
+				return false;
+		return true;
+	}
+}
@@ -0,0 +1,371 @@
+/*
+ * This class hosts many player-vs-computer games headless, the mode
+ * AddStrategy builds with a second board, without Swing or the
+ * aspects. Clients connect over loopback TCP and speak a line
+ * protocol, one reply line per command line:
+ *
+ *   NEW [size] [smart|density|montecarlo]  -> OK id size
+ *   RESUME id                              -> OK id size
+ *   SHOT x y    -> result [cx cy cresult] [WIN shots|LOSE shots]
+ *   END                                    -> OK
+ *   STATS       -> SESSIONS n BYTES b MOVES m
+ *   QUIT                                   -> BYE
+ *
+ * A result is MISS, HIT or SUNK:length. After the client's shot at
+ * the computer's board, the computer shoots back at the client's
+ * board at (cx, cy), unless the client just won. Anything else is
+ * answered with ERR and a message.
+ *
+ * Every session keeps its pair of boards and its strategy in a
+ * registry, so a client may reconnect and resume it. A finished
+ * session is dropped when its client starts a new game. Sessions not
+ * used for the idle timeout are evicted. Each session is accounted
+ * an estimate of its heap footprint, and new sessions are refused
+ * once the total would exceed the memory budget. Density and Monte
+ * Carlo sessions on boards of the same size share a PositionCache of
+ * fixed size, which holds the endgame positions their solvers solved
+ * exactly. A cache is kept for the life of the server and charged
+ * to the budget when it is created; when the budget cannot take it,
+ * the sessions of its size play without a cache.
+ *
+ * Each connection is served by its own thread with a small stack.
+ * The code targets Java 8, which has no virtual threads, so these
+ * are platform threads from a cached pool.
+ *
+ * Usage: GameServer [port] [idleSeconds] [budgetMegabytes]
+ */
+
+package battleship.strat;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import battleship.model.Board;
+import battleship.model.FleetPlacer;
+import battleship.model.Place;
+import battleship.model.Ship;
+
+public class GameServer {
+	//stack size of connection threads; serving a session needs little
+	static final long STACK_SIZE = 256 * 1024;
+	//board sizes a client may ask for; 5 fits the longest default ship
+	static final int MIN_SIZE = 5;
+	static final int MAX_SIZE = 100;
+	//bytes of the position cache of each board size
+	static final long CACHE_BYTES = 16L << 20;
+
+	//live sessions by id
+	final Map<Long, Session> sessions = new ConcurrentHashMap<>();
+	//position caches by board size; empty once the budget could not take
+	//the cache of a size, so that its later sessions do not try again
+	final Map<Integer, Optional<PositionCache>> caches = new ConcurrentHashMap<>();
+	final AtomicLong nextId = new AtomicLong();
+	//accounted heap bytes of the live sessions and the caches
+	final AtomicLong bytes = new AtomicLong();
+	//moves played, a client shot and its answer counting as one
+	final LongAdder moves = new LongAdder();
+	long idleNanos;
+	long budgetBytes;
+	ServerSocket server;
+	ExecutorService connections;
+	ScheduledExecutorService reaper;
+
+	public GameServer(long idleNanos, long budgetBytes){
+		this.idleNanos = idleNanos;
+		this.budgetBytes = budgetBytes;
+	}
+
+	//listen on the given loopback port, 0 for any, and return the port
+	public int start(int port) throws IOException {
+		this.server = new ServerSocket(port, 1024, InetAddress.getLoopbackAddress());
+		this.connections = Executors.newCachedThreadPool(threads("battleship-session", STACK_SIZE));
+		this.reaper = Executors.newSingleThreadScheduledExecutor(threads("battleship-reaper", 0));
+		long period = Math.max(TimeUnit.SECONDS.toNanos(1), this.idleNanos / 4);
+		this.reaper.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.NANOSECONDS);
+		Thread acceptor = threads("battleship-accept", 0).newThread(this::accept);
+		acceptor.start();
+		return this.server.getLocalPort();
+	}
+
+	//stop accepting and close all the connections
+	public void close() throws IOException {
+		this.server.close();
+		this.connections.shutdownNow();
+		this.reaper.shutdownNow();
+	}
+
+	static ThreadFactory threads(String name, long stackSize){
+		AtomicLong count = new AtomicLong();
+		return r -> {
+			Thread t = new Thread(null, r, name + "-" + count.incrementAndGet(), stackSize);
+			t.setDaemon(true);
+			return t;
+		};
+	}
+
+	void accept(){
+		while(!this.server.isClosed()){
+			try{
+				Socket socket = this.server.accept();
+				this.connections.execute(() -> serve(socket));
+			} catch(IOException e){
+				//closed, or the connection failed before it was served
+			}
+		}
+	}
+
+	//serve one connection until the client quits, idles out or disconnects
+	void serve(Socket socket){
+		try(Socket s = socket;
+			BufferedReader in = new BufferedReader(
+					new InputStreamReader(s.getInputStream(), StandardCharsets.US_ASCII));
+			Writer out = new OutputStreamWriter(s.getOutputStream(), StandardCharsets.US_ASCII)){
+			//at least 1 ms, as 0 would mean no timeout at all
+			s.setSoTimeout((int) Math.max(1, Math.min(Integer.MAX_VALUE,
+					TimeUnit.NANOSECONDS.toMillis(this.idleNanos))));
+			s.setTcpNoDelay(true);
+			Session current = null;
+			String line;
+			while((line = in.readLine()) != null){
+				String[] args = line.trim().split("\\s+");
+				String reply;
+				switch(args[0].toUpperCase()){
+				case "NEW":
+					//a finished game cannot be resumed, so it is dropped
+					if(current != null && current.over)
+						remove(current);
+					Session created = open(args.length > 1 ? parse(args[1]) : 10,
+							args.length > 2 ? args[2] : "smart");
+					if(created != null)
+						current = created;
+					reply = created == null ? "ERR sessions full or bad size"
+							: "OK " + created.id + " " + created.size;
+					break;
+				case "RESUME":
+					Session resumed = args.length > 1 ? this.sessions.get(parseId(args[1])) : null;
+					if(resumed != null){
+						current = resumed;
+						resumed.lastUsed = System.nanoTime();
+					}
+					reply = resumed == null ? "ERR no such session"
+							: "OK " + resumed.id + " " + resumed.size;
+					break;
+				case "SHOT":
+					if(current == null || this.sessions.get(current.id) != current)
+						reply = "ERR no session";
+					else if(args.length < 3)
+						reply = "ERR usage: SHOT x y";
+					else{
+						reply = current.shoot(parse(args[1]), parse(args[2]));
+						if(!reply.startsWith("ERR"))
+							this.moves.increment();
+					}
+					break;
+				case "END":
+					if(current != null)
+						remove(current);
+					current = null;
+					reply = "OK";
+					break;
+				case "STATS":
+					reply = "SESSIONS " + this.sessions.size() + " BYTES " + this.bytes.get()
+							+ " MOVES " + this.moves.sum();
+					break;
+				case "QUIT":
+					out.write("BYE\n");
+					out.flush();
+					return;
+				default:
+					reply = "ERR unknown command";
+				}
+				out.write(reply);
+				out.write('\n');
+				out.flush();
+			}
+		} catch(SocketTimeoutException e){
+			//idle connection; its session stays until evicted
+		} catch(IOException e){
+			//client went away
+		}
+	}
+
+	static int parse(String s){
+		try{
+			return Integer.parseInt(s);
+		} catch(NumberFormatException e){
+			return -1;
+		}
+	}
+
+	static long parseId(String s){
+		try{
+			return Long.parseLong(s);
+		} catch(NumberFormatException e){
+			return -1;
+		}
+	}
+
+	//create and register a session, or return null if the size is not
+	//supported or the session would exceed the memory budget
+	Session open(int size, String strategy){
+		if(size < MIN_SIZE || size > MAX_SIZE)
+			return null;
+		long estimate = Session.estimateBytes(size, strategy);
+		if(this.bytes.addAndGet(estimate) > this.budgetBytes){
+			this.bytes.addAndGet(-estimate);
+			return null;
+		}
+		PositionCache cache = Simulator.usesCache(strategy) ? cache(size) : null;
+		Session session = new Session(this.nextId.incrementAndGet(), size, strategy, cache, estimate);
+		this.sessions.put(session.id, session);
+		return session;
+	}
+
+	//the cache shared by the sessions of the given size, created on first
+	//use, or null if the memory budget could not take it then
+	PositionCache cache(int size){
+		return this.caches.computeIfAbsent(size, s -> {
+			//reserve the most the cache may take, then charge what it takes
+			if(this.bytes.addAndGet(CACHE_BYTES) > this.budgetBytes){
+				this.bytes.addAndGet(-CACHE_BYTES);
+				return Optional.empty();
+			}
+			PositionCache cache = PositionCache.ofBytes(CACHE_BYTES, s);
+			this.bytes.addAndGet(cache.bytes() - CACHE_BYTES);
+			return Optional.of(cache);
+		}).orElse(null);
+	}
+
+	void remove(Session session){
+		if(this.sessions.remove(session.id, session))
+			this.bytes.addAndGet(-session.bytes);
+	}
+
+	//evict the sessions not used for the idle timeout
+	void evictIdle(){
+		long now = System.nanoTime();
+		for(Session s: this.sessions.values())
+			if(now - s.lastUsed > this.idleNanos)
+				remove(s);
+	}
+
+	//one game: the client shoots at target, the computer at own
+	static class Session {
+		final long id;
+		final int size;
+		//computer's ships, shot by the client
+		final Board target;
+		//client's ships, shot by the computer
+		final Board own;
+		final StrategyRunner computer;
+		//accounted heap bytes
+		final long bytes;
+		volatile long lastUsed;
+		volatile boolean over;
+
+		Session(long id, int size, String strategy, PositionCache cache, long bytes){
+			Random random = new Random();
+			FleetPlacer placer = new FleetPlacer(random);
+			this.id = id;
+			this.size = size;
+			this.target = new Board(size);
+			this.own = new Board(size);
+			placer.place(this.target);
+			placer.place(this.own);
+			this.computer = new StrategyRunner(
+					Strategy.create(strategy, this.own, random, cache), this.own);
+			this.bytes = bytes;
+			this.lastUsed = System.nanoTime();
+		}
+
+		//play the client's shot and the computer's answer
+		synchronized String shoot(int x, int y){
+			this.lastUsed = System.nanoTime();
+			if(this.over)
+				return "ERR game over";
+			Place place = this.target.at(x, y);
+			if(place == null)
+				return "ERR no such place";
+			if(place.isHit())
+				return "ERR already shot";
+			this.target.hit(place);
+			StringBuilder reply = new StringBuilder(result(place));
+			if(this.target.isGameOver()){
+				this.over = true;
+				return reply.append(" WIN ").append(this.target.numOfShots()).toString();
+			}
+			Place answer = this.computer.move();
+			reply.append(' ').append(answer.getX()).append(' ').append(answer.getY())
+					.append(' ').append(result(answer));
+			if(this.own.isGameOver()){
+				this.over = true;
+				reply.append(" LOSE ").append(this.own.numOfShots());
+			}
+			return reply.toString();
+		}
+
+		static String result(Place place){
+			if(place.isEmpty())
+				return "MISS";
+			Ship ship = place.ship();
+			return ship.isSunk() ? "SUNK:" + ship.size() : "HIT";
+		}
+
+		//estimated heap bytes of a session on a 64-bit JVM with
+		//compressed references: two boards, the strategy state and
+		//the runner playing it
+		static long estimateBytes(int size, String strategy){
+			long cells = (long) size * size;
+			//a place object and its slot in the places list
+			long board = 512 + cells * (32 + 4)
+					//grid bitboards and ship ids
+					+ 2 * (16 + ((cells + 63) >>> 6) * 8) + 16 + cells
+					//default fleet of 5 ships and their place lists
+					+ 5 * 96 + 17 * 4;
+			long strat;
+			switch(strategy){
+			case "density":
+				strat = 256 + cells * (1 + 4);
+				break;
+			case "montecarlo":
+				strat = 256;
+				break;
+			default:
+				strat = 256 + cells * (4 + 4) + 2 * (cells / 8);
+			}
+			return 256 + 2 * board + strat + 128;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : 7070;
+		long idle = args.length > 1 ? Long.parseLong(args[1]) : 300;
+		long budget = args.length > 2 ? Long.parseLong(args[2])
+				: Runtime.getRuntime().maxMemory() / 2 >> 20;
+
+		GameServer server = new GameServer(TimeUnit.SECONDS.toNanos(idle), budget << 20);
+		port = server.start(port);
+		System.out.printf("listening on %s:%d, idle timeout %d s, budget %d MB%n",
+				InetAddress.getLoopbackAddress().getHostAddress(), port, idle, budget);
+		Thread.currentThread().join();
+	}
+}
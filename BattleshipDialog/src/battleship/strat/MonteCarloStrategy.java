@@ -0,0 +1,320 @@
+/*
+ * This class implements a high-difficulty strategy for the computer.
+ * Before each shot it samples many random layouts of the ships not
+ * sunk yet that are consistent with what can be seen on the board:
+ * no ship on a miss or on a sunk ship, and every other hit covered.
+ * The place covered most often by the sampled layouts is shot.
+ * Sampling is split over a fork/join pool; every worker fills its own
+ * histogram on its own scratch grid until the time budget of the move
+ * runs out, and the histograms are summed when the tasks are joined.
+ * The first moves are played from the opening book, and when few
+ * enough layouts remain, the EndgameSolver counts them all instead
+ * of sampling. The positions it solves may be kept in a PositionCache;
+ * sampled estimates are not cached, so every move samples anew.
+ * Shots are encoded as (x-1)*size + (y-1), as in SmartStrategy.
+ */
+
+package battleship.strat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import battleship.model.Board;
+import battleship.model.Grid;
+import battleship.model.Ship;
+
+public class MonteCarloStrategy implements Strategy {
+	//default time budget of a move
+	static final long DEFAULT_BUDGET_NANOS = 20_000_000L;
+	//samples taken between two looks at the clock
+	static final int CLOCK_INTERVAL = 64;
+	//random tries to place a ship before a sample is given up
+	static final int PLACE_TRIES = 64;
+
+	Board board;
+	int size;
+	long budgetNanos;
+	ForkJoinPool pool;
+	SplittableRandom random;
+	//shot chosen by checkShot, or -1
+	int next = -1;
+	//number of consistent layouts sampled, or counted, for the last move
+	long samples;
+	//opening moves, or null
+	OpeningBook book = OpeningBook.shared();
+	//exact solver for small positions, or null
+	EndgameSolver endgame = new EndgameSolver();
+
+	public MonteCarloStrategy(Board board){
+		this(board, DEFAULT_BUDGET_NANOS, ForkJoinPool.commonPool());
+	}
+	public MonteCarloStrategy(Board board, long budgetNanos, ForkJoinPool pool){
+		this.board = board;
+		this.size = board.size();
+		this.budgetNanos = budgetNanos;
+		this.pool = pool;
+		this.random = new SplittableRandom();
+	}
+	//play the moves of the given book, or none if null
+	public void setBook(OpeningBook book){
+		this.book = book;
+	}
+	//use the given solver near the end of a game, or none if null
+	public void setEndgame(EndgameSolver endgame){
+		this.endgame = endgame;
+	}
+	//keep the positions solved near the end of a game in the given cache
+	public void setCache(PositionCache cache){
+		if(this.endgame != null)
+			this.endgame.setCache(cache);
+	}
+	int checkShot(){
+		if(this.next < 0 || isShot(this.next))
+			this.next = toShot(best(new BoardObservation(this.board),
+					System.nanoTime() + this.budgetNanos));
+		return this.next;
+	}
+	//Strategy: sampling stops at the deadline, and the place covered
+	//most often so far is shot
+	public int nextShot(Observation observation, long deadline){
+		this.next = -1;
+		return best(observation, deadline);
+	}
+	public void hit(int place){
+	}
+	public void miss(int place){
+	}
+	public void sunk(int place, Ship ship){
+	}
+	public void reset(){
+		this.next = -1;
+	}
+	int doShot(){
+		int shot = checkShot();
+		this.next = -1;
+		return shot;
+	}
+	//the board itself is observed, so hits and sinks need no bookkeeping
+	void notifyHit(int place){
+	}
+	void notifySunk(){
+	}
+	boolean isShot(int shot){
+		return this.board.at(shot/this.size+1, shot%this.size+1).isHit();
+	}
+	int toShot(int cell){
+		return (cell%this.size)*this.size + cell/this.size;
+	}
+	//cell of the grid covered by most layouts sampled until the deadline,
+	//or by most of all the layouts if the endgame solver can count them;
+	//the opening book comes first
+	int best(Observation observation, long deadline){
+		int move = this.book == null ? -1 : this.book.move(observation);
+		if(move >= 0)
+			return move;
+		if(this.endgame != null){
+			int place = this.endgame.bestShot(observation, deadline);
+			if(place >= 0){
+				this.samples = this.endgame.layouts;
+				return place;
+			}
+		}
+		Snapshot obs = new Snapshot(observation);
+		int workers = this.pool.getParallelism();
+		long[] hist = this.pool.invoke(
+				new SampleTask(obs, 0, workers, this.random.split(), deadline));
+		this.samples = hist[hist.length-1];
+		int best = -1;
+		long max = -1;
+		int n = this.size*this.size;
+		for(int k = 0, c = this.random.nextInt(n); k < n; k++, c = c+1 == n ? 0 : c+1){
+			if(!obs.shot[c] && hist[c] > max){
+				max = hist[c];
+				best = c;
+			}
+		}
+		return best;
+	}
+
+	//what can be seen on the board when a move is made; read-only
+	static class Snapshot {
+		final int size;
+		//cells shot so far
+		final boolean[] shot;
+		//misses and places of sunk ships
+		final int[] blocked;
+		//hits on ships not sunk yet
+		final int[] hits;
+		//lengths of the ships not sunk yet
+		final int[] lengths;
+
+		Snapshot(Observation observation){
+			this.size = observation.size();
+			this.shot = new boolean[this.size*this.size];
+			List<Integer> blocked = new ArrayList<>();
+			List<Integer> hits = new ArrayList<>();
+			for(int c = 0; c < this.shot.length; c++){
+				int state = observation.state(c);
+				if(state != Observation.UNKNOWN){
+					this.shot[c] = true;
+					if(state == Observation.HIT)
+						hits.add(c);
+					else
+						blocked.add(c);
+				}
+			}
+			this.blocked = blocked.stream().mapToInt(i -> i).toArray();
+			this.hits = hits.stream().mapToInt(i -> i).toArray();
+			this.lengths = observation.remainingShips();
+		}
+	}
+
+	//samples layouts on workers [lo, hi); the last slot of the result
+	//holds the number of samples
+	@SuppressWarnings("serial")
+	static class SampleTask extends RecursiveTask<long[]> {
+		final Snapshot obs;
+		final int lo;
+		final int hi;
+		final SplittableRandom random;
+		final long deadline;
+
+		SampleTask(Snapshot obs, int lo, int hi, SplittableRandom random, long deadline){
+			this.obs = obs;
+			this.lo = lo;
+			this.hi = hi;
+			this.random = random;
+			this.deadline = deadline;
+		}
+		protected long[] compute(){
+			if(this.hi - this.lo > 1){
+				int mid = (this.lo + this.hi) >>> 1;
+				SampleTask right = new SampleTask(this.obs, mid, this.hi, this.random.split(), this.deadline);
+				right.fork();
+				long[] left = new SampleTask(this.obs, this.lo, mid, this.random, this.deadline).compute();
+				long[] other = right.join();
+				for(int i = 0; i < left.length; i++)
+					left[i] += other[i];
+				return left;
+			}
+			return new Sampler(this.obs, this.random).run(this.deadline);
+		}
+	}
+
+	//one worker: draws layouts on its own scratch grid
+	static class Sampler {
+		final Snapshot obs;
+		final SplittableRandom random;
+		final int size;
+		//blocked cells are occupied for good; ships are placed and removed
+		final Grid grid;
+		final long[] hist;
+		//cells occupied by the ships of the current sample
+		final int[] placed;
+		int numPlaced;
+		//ships of the current sample not placed yet, as indices of lengths
+		final int[] ships;
+
+		Sampler(Snapshot obs, SplittableRandom random){
+			this.obs = obs;
+			this.random = random;
+			this.size = obs.size;
+			this.grid = new Grid(this.size);
+			for(int c: obs.blocked)
+				this.grid.occupy(c, 0);
+			this.hist = new long[this.size*this.size + 1];
+			int total = 0;
+			for(int len: obs.lengths)
+				total += len;
+			this.placed = new int[total];
+			this.ships = new int[obs.lengths.length];
+		}
+		long[] run(long deadline){
+			long count = 0;
+			do{
+				for(int k = 0; k < CLOCK_INTERVAL; k++){
+					if(sample()){
+						for(int i = 0; i < this.numPlaced; i++)
+							this.hist[this.placed[i]]++;
+						count++;
+					}
+					for(int i = 0; i < this.numPlaced; i++)
+						this.grid.clear(this.placed[i]);
+					this.numPlaced = 0;
+				}
+			} while(System.nanoTime() < deadline);
+			this.hist[this.hist.length-1] = count;
+			return this.hist;
+		}
+		//draw one layout; false if it could not be completed
+		boolean sample(){
+			int left = this.ships.length;
+			for(int i = 0; i < left; i++)
+				this.ships[i] = i;
+			//cover every hit first with a random ship through it
+			for(int h: this.obs.hits){
+				if(this.grid.isOccupied(h))
+					continue;
+				if(left == 0)
+					return false;
+				int pick = this.random.nextInt(left);
+				int len = this.obs.lengths[this.ships[pick]];
+				this.ships[pick] = this.ships[--left];
+				if(!placeThrough(h, len))
+					return false;
+			}
+			//then the rest anywhere
+			while(left > 0){
+				int len = this.obs.lengths[this.ships[--left]];
+				if(!placeRandom(len))
+					return false;
+			}
+			return true;
+		}
+		//place a ship of the given length at a random free position covering cell
+		boolean placeThrough(int cell, int len){
+			int cx = cell%this.size + 1;
+			int cy = cell/this.size + 1;
+			int choices = 0;
+			int bx = 0, by = 0;
+			boolean bdir = false;
+			for(int k = 0; k < 2*len; k++){
+				boolean dir = k < len;
+				int off = k%len;
+				int x = dir ? cx-off : cx;
+				int y = dir ? cy : cy-off;
+				if(this.grid.isFree(x, y, len, dir) && this.random.nextInt(++choices) == 0){
+					bx = x;
+					by = y;
+					bdir = dir;
+				}
+			}
+			if(choices == 0)
+				return false;
+			occupy(bx, by, len, bdir);
+			return true;
+		}
+		boolean placeRandom(int len){
+			for(int t = 0; t < PLACE_TRIES; t++){
+				int x = this.random.nextInt(this.size) + 1;
+				int y = this.random.nextInt(this.size) + 1;
+				boolean dir = this.random.nextBoolean();
+				if(this.grid.isFree(x, y, len, dir)){
+					occupy(x, y, len, dir);
+					return true;
+				}
+			}
+			return false;
+		}
+		void occupy(int x, int y, int len, boolean dir){
+			int step = dir ? 1 : this.size;
+			for(int k = 0, c = this.grid.index(x, y); k < len; k++, c += step){
+				this.grid.occupy(c, 1);
+				this.placed[this.numPlaced++] = c;
+			}
+		}
+	}
+}
@@ -0,0 +1,39 @@
+/*
+ * This interface is what a strategy sees of the board it shoots at:
+ * the state of every place and the lengths of the ships still
+ * afloat, but not where those ships are. Places are indexed
+ * (y-1)*size + (x-1), as in the grid of a board.
+ */
+
+package battleship.strat;
+
+import battleship.model.Zobrist;
+
+public interface Observation {
+	//states of a place
+	int UNKNOWN = 0;
+	int MISS = 1;
+	//hit on a ship not sunk yet
+	int HIT = 2;
+	//hit on a sunk ship
+	int SUNK = 3;
+
+	int size();
+	int numOfShots();
+	//state of the given place, one of the constants above
+	int state(int place);
+	//lengths of the ships not sunk yet
+	int[] remainingShips();
+	//Zobrist hash of the states of the places, the one a board keeps,
+	//so positions reached by different orders of shots share a key
+	default long zobrist(){
+		int size = size();
+		long hash = 0;
+		for(int c = 0; c < size*size; c++){
+			int state = state(c);
+			if(state != UNKNOWN)
+				hash ^= Zobrist.key(size, c, state-1);
+		}
+		return hash;
+	}
+}
@@ -0,0 +1,298 @@
+/*
+ * This class holds precomputed opening moves. Until a strategy finds
+ * a ship, what it has seen depends only on the board size and the
+ * fleet, so its first shots can be computed offline. For every size
+ * and fleet the book keeps one line of shots: each is the place most
+ * likely to hold a ship given that all the shots before it missed,
+ * over many layouts drawn by FleetPlacer, the placer the game uses.
+ * A strategy plays the line while every shot of it missed, and
+ * leaves the book at its first hit.
+ *
+ * The book is a file read through a read-only memory map, so
+ * loading it only parses its small directory and the moves are read
+ * straight from the mapped pages. Its layout is:
+ *
+ *   int magic, byte version, short number of lines, and per line
+ *   short size, byte number of ships, one byte per ship length,
+ *   longest first, short number of moves, one short per move
+ *
+ * Places are indexed (y-1)*size + (x-1), as in Observation. The book
+ * shared by the strategies is read from the file named by the
+ * battleship.book property, or else from the openings.book resource
+ * next to this class, wherever the game is started from. A book that
+ * cannot be found or read is reported, and there are no openings.
+ *
+ * Usage: OpeningBook [file] [moves] [layouts] [minSize] [maxSize]
+ * writes the book of the default fleet for the given sizes, by default
+ * to the resource in the source folder.
+ */
+
+package battleship.strat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import battleship.model.Board;
+import battleship.model.FleetPlacer;
+import battleship.model.Place;
+import battleship.model.Ship;
+
+public class OpeningBook {
+	static final int MAGIC = 0x42534F42;
+	static final byte VERSION = 1;
+	//file of the shared book, or null for the resource
+	static final String FILE = System.getProperty("battleship.book");
+	//resource of the shared book, next to this class
+	static final String RESOURCE = "openings.book";
+	//defaults of the generator
+	static final int DEFAULT_MOVES = 12;
+	static final int DEFAULT_LAYOUTS = 200_000;
+
+	//mapped moves, or null if the book is empty
+	ByteBuffer moves;
+	//directory: size, fleet sorted longest first, offset of the first
+	//move and number of moves of every line
+	int[] sizes;
+	int[][] fleets;
+	int[] offsets;
+	int[] lengths;
+	//number of moves of the longest line
+	int longest;
+
+	//the empty book
+	OpeningBook(){
+		this.sizes = new int[0];
+		this.fleets = new int[0][];
+		this.offsets = new int[0];
+		this.lengths = new int[0];
+	}
+	//read the directory of the book mapped in the given buffer
+	OpeningBook(ByteBuffer buffer) throws IOException {
+		if(buffer.remaining() < 7 || buffer.getInt(0) != MAGIC || buffer.get(4) != VERSION)
+			throw new IOException("Not an opening book");
+		try{
+			int lines = buffer.getShort(5) & 0xFFFF;
+			this.sizes = new int[lines];
+			this.fleets = new int[lines][];
+			this.offsets = new int[lines];
+			this.lengths = new int[lines];
+			int at = 7;
+			for(int i = 0; i < lines; i++){
+				this.sizes[i] = buffer.getShort(at) & 0xFFFF;
+				int ships = buffer.get(at+2) & 0xFF;
+				this.fleets[i] = new int[ships];
+				for(int k = 0; k < ships; k++)
+					this.fleets[i][k] = buffer.get(at+3+k) & 0xFF;
+				at += 3 + ships;
+				this.lengths[i] = buffer.getShort(at) & 0xFFFF;
+				this.offsets[i] = at + 2;
+				at += 2 + 2*this.lengths[i];
+				if(at > buffer.limit())
+					throw new IOException("Truncated opening book");
+				this.longest = Math.max(this.longest, this.lengths[i]);
+			}
+		} catch(IndexOutOfBoundsException e){
+			throw new IOException("Truncated opening book");
+		}
+		this.moves = buffer;
+	}
+
+	//map the book in the given file
+	public static OpeningBook open(Path file) throws IOException {
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return new OpeningBook(buffer);
+		}
+	}
+
+	//the book shared by the strategies, loaded on first use
+	public static OpeningBook shared(){
+		return Shared.BOOK;
+	}
+	static class Shared {
+		static final OpeningBook BOOK = FILE != null ? load(Paths.get(FILE)) : loadResource(RESOURCE);
+	}
+	static OpeningBook load(Path file){
+		if(!Files.exists(file)){
+			System.err.println("Opening book " + file + " not found, playing without openings");
+			return new OpeningBook();
+		}
+		try{
+			return open(file);
+		} catch(IOException e){
+			System.err.println("Opening book " + file + " not loaded: " + e.getMessage());
+			return new OpeningBook();
+		}
+	}
+	//the book of the given resource next to this class: mapped if it is
+	//a file, as in a class folder, and read otherwise, as from a jar
+	static OpeningBook loadResource(String name){
+		URL url = OpeningBook.class.getResource(name);
+		if(url == null){
+			System.err.println("Opening book " + name + " not found on the class path, playing without openings");
+			return new OpeningBook();
+		}
+		try{
+			if("file".equals(url.getProtocol()))
+				return open(Paths.get(url.toURI()));
+			try(InputStream in = url.openStream()){
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				byte[] chunk = new byte[8192];
+				for(int n; (n = in.read(chunk)) > 0;)
+					bytes.write(chunk, 0, n);
+				return new OpeningBook(ByteBuffer.wrap(bytes.toByteArray()));
+			}
+		} catch(IOException | URISyntaxException e){
+			System.err.println("Opening book " + url + " not loaded: " + e.getMessage());
+			return new OpeningBook();
+		}
+	}
+
+	//the book move for the observed position, or -1 if the position is
+	//out of the book: a ship was hit, or the shots made were not the
+	//moves of the book
+	public int move(Observation observation){
+		int shots = observation.numOfShots();
+		if(shots >= this.longest)
+			return -1;
+		int line = line(observation.size(), observation.remainingShips());
+		if(line < 0 || shots >= this.lengths[line])
+			return -1;
+		for(int k = 0; k < shots; k++)
+			if(observation.state(move(line, k)) != Observation.MISS)
+				return -1;
+		int place = move(line, shots);
+		return observation.state(place) == Observation.UNKNOWN ? place : -1;
+	}
+	int move(int line, int k){
+		return this.moves.getShort(this.offsets[line] + 2*k) & 0xFFFF;
+	}
+	//the line of the given size and fleet, or -1 if there is none
+	int line(int size, int[] fleet){
+		int[] sorted = sortDescending(fleet);
+		for(int i = 0; i < this.sizes.length; i++)
+			if(this.sizes[i] == size && Arrays.equals(this.fleets[i], sorted))
+				return i;
+		return -1;
+	}
+	static int[] sortDescending(int[] lengths){
+		int[] sorted = lengths.clone();
+		Arrays.sort(sorted);
+		for(int i = 0, j = sorted.length-1; i < j; i++, j--){
+			int t = sorted[i];
+			sorted[i] = sorted[j];
+			sorted[j] = t;
+		}
+		return sorted;
+	}
+
+	//compute the line of the given board's size and fleet: each move is
+	//the place covered by most of the sampled layouts that all the moves
+	//before it miss
+	static int[] generate(Board board, int moves, int layouts, Random random){
+		int n = board.size()*board.size();
+		int words = (n + 63) >>> 6;
+		FleetPlacer placer = new FleetPlacer(random);
+		long[] sampled = new long[layouts*words];
+		for(int s = 0; s < layouts; s++){
+			board.reset();
+			placer.place(board);
+			for(Ship ship: board.ships())
+				for(Place p: ship.places()){
+					int c = (p.getY()-1)*board.size() + p.getX()-1;
+					sampled[s*words + (c >>> 6)] |= 1L << c;
+				}
+		}
+		board.reset();
+		int[] line = new int[Math.min(moves, n)];
+		boolean[] shot = new boolean[n];
+		long[] count = new long[n];
+		int alive = layouts;
+		for(int k = 0; k < line.length; k++){
+			Arrays.fill(count, 0);
+			for(int s = 0; s < alive; s++)
+				for(int w = 0; w < words; w++)
+					for(long bits = sampled[s*words + w]; bits != 0; bits &= bits-1)
+						count[(w << 6) + Long.numberOfTrailingZeros(bits)]++;
+			int best = -1;
+			for(int c = 0; c < n; c++)
+				if(!shot[c] && (best < 0 || count[c] > count[best]))
+					best = c;
+			line[k] = best;
+			shot[best] = true;
+			//keep the layouts the move misses
+			int kept = 0;
+			for(int s = 0; s < alive; s++){
+				if((sampled[s*words + (best >>> 6)] & (1L << best)) == 0){
+					System.arraycopy(sampled, s*words, sampled, kept*words, words);
+					kept++;
+				}
+			}
+			alive = kept;
+			if(alive == 0)
+				return Arrays.copyOf(line, k+1);
+		}
+		return line;
+	}
+
+	//write the lines of the given sizes, fleets and moves
+	static void write(Path file, List<Integer> sizes, List<int[]> fleets, List<int[]> lines) throws IOException {
+		try(DataOutputStream out = new DataOutputStream(new FileOutputStream(file.toFile()))){
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			out.writeShort(lines.size());
+			for(int i = 0; i < lines.size(); i++){
+				int[] fleet = sortDescending(fleets.get(i));
+				out.writeShort(sizes.get(i));
+				out.writeByte(fleet.length);
+				for(int len: fleet)
+					out.writeByte(len);
+				out.writeShort(lines.get(i).length);
+				for(int place: lines.get(i))
+					out.writeShort(place);
+			}
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		Path file = Paths.get(args.length > 0 ? args[0]
+				: FILE != null ? FILE : "BattleshipDialog/src/battleship/strat/" + RESOURCE);
+		int moves = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_MOVES;
+		int layouts = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_LAYOUTS;
+		int minSize = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+		int maxSize = args.length > 4 ? Integer.parseInt(args[4]) : 20;
+
+		Random random = new Random(1);
+		List<Integer> sizes = new ArrayList<>();
+		List<int[]> fleets = new ArrayList<>();
+		List<int[]> lines = new ArrayList<>();
+		for(int size = minSize; size <= maxSize; size++){
+			Board board = new Board(size);
+			List<Integer> fleet = new ArrayList<>();
+			for(Ship ship: board.ships())
+				fleet.add(ship.size());
+			sizes.add(size);
+			fleets.add(fleet.stream().mapToInt(Integer::intValue).toArray());
+			lines.add(generate(board, moves, layouts, random));
+		}
+		write(file, sizes, fleets, lines);
+		System.out.printf("%d lines of up to %d moves from %d layouts each, %d bytes, in %s%n",
+				lines.size(), moves, layouts, Files.size(file), file);
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ * This class caches the evaluations of positions: for the key of an
+ * observation, its Zobrist hash mixed with the ships afloat (see
+ * EndgameSolver.key), the probability of a ship on every place. Shot
+ * orders reaching the same position share its hash, so a position
+ * evaluated once is a lookup the next time, for any strategy sharing
+ * the cache, on any thread.
+ * The cache is bounded and set-associative: a hash selects a set of
+ * WAYS entries, and a full set evicts with the CLOCK algorithm, an
+ * approximation of LRU where an entry used since the hand last passed
+ * it gets a second chance. Keys, reference bits and probabilities
+ * live in flat primitive arrays, so an entry costs no object. Sets are
+ * locked in stripes, so threads working on different sets do not
+ * contend.
+ * A cache holds positions of one board size; places are indexed
+ * (y-1)*size + (x-1), as in Observation.
+ */
+
+package battleship.strat;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+public class PositionCache {
+	//entries of a set
+	static final int WAYS = 8;
+	//most lock stripes
+	static final int STRIPES = 64;
+	//states of an entry
+	static final byte EMPTY = 0;
+	static final byte USED = 1;
+	static final byte REFERENCED = 2;
+
+	int places;
+	int sets;
+	long[] keys;
+	byte[] states;
+	//next entry the hand of each set looks at
+	byte[] hands;
+	//probabilities of entry e at [e*places, (e+1)*places)
+	float[] probabilities;
+	Object[] locks;
+	LongAdder hits = new LongAdder();
+	LongAdder misses = new LongAdder();
+
+	//a cache of at least the given number of positions of boards of
+	//the given size; the number of sets is rounded up to a power of two
+	public PositionCache(int capacity, int size){
+		int sets = 1;
+		while(sets*WAYS < capacity)
+			sets <<= 1;
+		if((long) sets*WAYS*size*size > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException("Cache too large: " + capacity + " positions of size " + size);
+		this.places = size*size;
+		this.sets = sets;
+		this.keys = new long[sets*WAYS];
+		this.states = new byte[sets*WAYS];
+		this.hands = new byte[sets];
+		this.probabilities = new float[sets*WAYS*this.places];
+		this.locks = new Object[Math.min(sets, STRIPES)];
+		for(int i = 0; i < this.locks.length; i++)
+			this.locks[i] = new Object();
+	}
+
+	//a cache of positions of the given size whose arrays fit in the given
+	//number of bytes: the largest power of two of sets that fits, and at
+	//least one set
+	public static PositionCache ofBytes(long bytes, int size){
+		long set = bytesOf(1, size*size);
+		long most = (Integer.MAX_VALUE - 8) / ((long) WAYS*size*size);
+		long sets = 1;
+		while(2*sets*set <= bytes && 2*sets <= most)
+			sets <<= 1;
+		return new PositionCache((int) sets*WAYS, size);
+	}
+	//bytes of the arrays of a cache of the given number of sets of
+	//positions of the given number of places
+	static long bytesOf(long sets, int places){
+		return sets*(WAYS*(8 + 1 + 4L*places) + 1);
+	}
+
+	int set(long key){
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h >>> 40) & (this.sets - 1);
+	}
+
+	//copy the probabilities of the given position into the given array
+	//and return true, or return false if the position is not cached
+	public boolean get(long key, float[] into){
+		int set = set(key);
+		synchronized(this.locks[set & (this.locks.length - 1)]){
+			for(int e = set*WAYS; e < (set+1)*WAYS; e++){
+				if(this.states[e] != EMPTY && this.keys[e] == key){
+					this.states[e] = REFERENCED;
+					System.arraycopy(this.probabilities, e*this.places, into, 0, this.places);
+					this.hits.increment();
+					return true;
+				}
+			}
+		}
+		this.misses.increment();
+		return false;
+	}
+
+	//cache the probabilities of the given position
+	public void put(long key, float[] probabilities){
+		int set = set(key);
+		synchronized(this.locks[set & (this.locks.length - 1)]){
+			int e = find(set, key);
+			if(e < 0)
+				e = evict(set);
+			this.keys[e] = key;
+			this.states[e] = USED;
+			System.arraycopy(probabilities, 0, this.probabilities, e*this.places, this.places);
+		}
+	}
+
+	int find(int set, long key){
+		for(int e = set*WAYS; e < (set+1)*WAYS; e++)
+			if(this.states[e] != EMPTY && this.keys[e] == key)
+				return e;
+		return -1;
+	}
+
+	//entry of the set to reuse: an empty one, or the first one not
+	//referenced since the hand passed it
+	int evict(int set){
+		int base = set*WAYS;
+		for(int e = base; e < base+WAYS; e++)
+			if(this.states[e] == EMPTY)
+				return e;
+		int hand = this.hands[set];
+		while(this.states[base + hand] == REFERENCED){
+			this.states[base + hand] = USED;
+			hand = (hand + 1) % WAYS;
+		}
+		this.hands[set] = (byte) ((hand + 1) % WAYS);
+		return base + hand;
+	}
+
+	//forget all the positions
+	public void clear(){
+		for(int set = 0; set < this.sets; set++){
+			synchronized(this.locks[set & (this.locks.length - 1)]){
+				Arrays.fill(this.states, set*WAYS, (set+1)*WAYS, EMPTY);
+			}
+		}
+	}
+
+	public int capacity(){
+		return this.sets*WAYS;
+	}
+	//bytes of the arrays of this cache
+	public long bytes(){
+		return bytesOf(this.sets, this.places);
+	}
+	public long hits(){
+		return this.hits.sum();
+	}
+	public long misses(){
+		return this.misses.sum();
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * This class measures how many sessions a GameServer holds per GB of
+ * heap and how many moves per second it serves on one box. It first
+ * opens sessions directly in an in-process server and compares the
+ * heap used before and after with the accounted footprint. It then
+ * connects clients over loopback TCP and plays random shots for the
+ * given time. Every client thread drives its share of the
+ * connections round-robin, starting a new game when one is over.
+ *
+ * Usage: ServerLoad [sessions] [seconds] [size] [strategy] [clientThreads]
+ */
+
+package battleship.strat;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class ServerLoad {
+
+	//one client connection playing random shots
+	static class Client {
+		Socket socket;
+		BufferedReader in;
+		Writer out;
+		String newGame;
+		//shuffled places, order[next..] not shot yet
+		int[] order;
+		int next;
+
+		Client(int port, int size, String strategy) throws IOException {
+			this.socket = new Socket(InetAddress.getLoopbackAddress(), port);
+			this.socket.setTcpNoDelay(true);
+			this.in = new BufferedReader(
+					new InputStreamReader(this.socket.getInputStream(), StandardCharsets.US_ASCII));
+			this.out = new OutputStreamWriter(this.socket.getOutputStream(), StandardCharsets.US_ASCII);
+			this.newGame = "NEW " + size + " " + strategy;
+			this.order = new int[size*size];
+			for(int i = 0; i < this.order.length; i++)
+				this.order[i] = i;
+			this.next = this.order.length;
+		}
+
+		String send(String line) throws IOException {
+			this.out.write(line);
+			this.out.write('\n');
+			this.out.flush();
+			String reply = this.in.readLine();
+			if(reply == null || reply.startsWith("ERR"))
+				throw new IOException(line + ": " + reply);
+			return reply;
+		}
+
+		//make one move, starting a new game first if needed
+		void move(Random random, int size) throws IOException {
+			if(this.next == this.order.length){
+				send(this.newGame);
+				this.next = 0;
+			}
+			int j = this.next + random.nextInt(this.order.length - this.next);
+			int shot = this.order[j];
+			this.order[j] = this.order[this.next];
+			this.order[this.next++] = shot;
+			String reply = send("SHOT " + (shot%size+1) + " " + (shot/size+1));
+			if(reply.contains("WIN") || reply.contains("LOSE"))
+				this.next = this.order.length;
+		}
+	}
+
+	static long usedHeap(){
+		Runtime rt = Runtime.getRuntime();
+		for(int i = 0; i < 3; i++)
+			System.gc();
+		return rt.totalMemory() - rt.freeMemory();
+	}
+
+	public static void main(String[] args) throws Exception {
+		int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		int size = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+		String strategy = args.length > 3 ? args[3] : "smart";
+		int clientThreads = args.length > 4 ? Integer.parseInt(args[4])
+				: Runtime.getRuntime().availableProcessors();
+
+		GameServer server = new GameServer(TimeUnit.MINUTES.toNanos(10), Long.MAX_VALUE);
+		int port = server.start(0);
+
+		//memory: sessions alone, without connections
+		long before = usedHeap();
+		List<GameServer.Session> opened = new ArrayList<>();
+		for(int i = 0; i < sessions; i++)
+			opened.add(server.open(size, strategy));
+		long measured = (usedHeap() - before) / sessions;
+		long accounted = server.bytes.get() / sessions;
+		System.out.printf("%d sessions of %s on %dx%d: %d bytes each measured, %d accounted, %.0f sessions/GB%n",
+				sessions, strategy, size, size, measured, accounted, (double) (1L << 30) / measured);
+		for(GameServer.Session s: opened)
+			server.remove(s);
+		opened.clear();
+
+		//throughput: random shots over loopback connections
+		List<Client> clients = new ArrayList<>();
+		for(int i = 0; i < sessions; i++)
+			clients.add(new Client(port, size, strategy));
+		ExecutorService pool = Executors.newFixedThreadPool(clientThreads);
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+		long start = System.nanoTime();
+		List<Future<Long>> results = new ArrayList<>();
+		for(int t = 0; t < clientThreads; t++){
+			List<Client> share = new ArrayList<>();
+			for(int i = t; i < clients.size(); i += clientThreads)
+				share.add(clients.get(i));
+			long seed = start + t;
+			results.add(pool.submit(() -> {
+				Random random = new Random(seed);
+				long count = 0;
+				while(System.nanoTime() < deadline){
+					for(Client c: share){
+						c.move(random, size);
+						count++;
+					}
+				}
+				return count;
+			}));
+		}
+		long total = 0;
+		for(Future<Long> f: results)
+			total += f.get();
+		double elapsed = (System.nanoTime() - start) / 1e9;
+		pool.shutdown();
+		System.out.printf("%d connections, %d client threads: %d moves in %.2f s (%.0f moves/s)%n",
+				sessions, clientThreads, total, elapsed, total / elapsed);
+		System.out.println(clients.get(0).send("STATS"));
+		for(Client c: clients)
+			c.socket.close();
+		server.close();
+	}
+}
@@ -0,0 +1,185 @@
+/*
+ * This class plays complete games headless, without Swing or the
+ * aspects: ships are placed at random and a strategy shoots until
+ * the board reports game over. Games are spread over a fixed pool
+ * of worker threads; every worker keeps its own board and its own
+ * statistics, which are merged once all the games are played.
+ * It reports the distribution of shots needed to win, games per
+ * second and percentiles of the time a strategy takes per move.
+ * The workers of the density and Monte Carlo strategies share one
+ * PositionCache, so an endgame position solved by one worker is a
+ * lookup for all of them; it is allocated when the games are first
+ * played.
+ *
+ * Usage: Simulator [games] [size] [smart|density|montecarlo] [threads] [cacheMegabytes]
+ */
+
+package battleship.strat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import battleship.metrics.Metric;
+import battleship.model.Board;
+import battleship.model.FleetPlacer;
+
+public class Simulator {
+	//default size of the position cache
+	static final long DEFAULT_CACHE_BYTES = 64L << 20;
+
+	int games;
+	int size;
+	String strategy;
+	int threads;
+	//size of the position cache, or 0 for none
+	long cacheBytes = DEFAULT_CACHE_BYTES;
+	//positions evaluated by the workers, or null
+	PositionCache cache;
+
+	public Simulator(int games, int size, String strategy, int threads){
+		this.games = games;
+		this.size = size;
+		this.strategy = strategy;
+		this.threads = threads;
+	}
+
+	//share a position cache of the given size, or none if 0
+	public void setCacheBytes(long bytes){
+		this.cacheBytes = bytes;
+		this.cache = null;
+	}
+
+	//the strategies that read a position cache
+	static boolean usesCache(String strategy){
+		return strategy.equals("density") || strategy.equals("montecarlo");
+	}
+
+	//play all the games and return the merged statistics
+	public Stats run() throws InterruptedException, ExecutionException {
+		if(this.cache == null && this.cacheBytes > 0 && usesCache(this.strategy))
+			this.cache = PositionCache.ofBytes(this.cacheBytes, this.size);
+		ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+		try{
+			List<Future<Stats>> results = new ArrayList<>();
+			long seed = System.nanoTime();
+			for(int w = 0; w < this.threads; w++){
+				int share = this.games/this.threads + (w < this.games%this.threads ? 1 : 0);
+				long workerSeed = seed + w;
+				results.add(pool.submit(() -> play(share, new Random(workerSeed))));
+			}
+			Stats total = new Stats();
+			for(Future<Stats> f: results)
+				total.merge(f.get());
+			return total;
+		}
+		finally{
+			pool.shutdown();
+		}
+	}
+
+	//play the given number of games on one reused board and strategy
+	Stats play(int count, Random random){
+		Stats stats = new Stats();
+		Board board = new Board(this.size);
+		FleetPlacer placer = new FleetPlacer(random);
+		StrategyRunner runner = new StrategyRunner(
+				Strategy.create(this.strategy, board, random, this.cache), board);
+		runner.recordInto(stats.moveNanos);
+		for(int g = 0; g < count; g++){
+			board.reset();
+			placer.place(board);
+			runner.reset();
+			while(!board.isGameOver())
+				runner.move();
+			stats.shots.record(board.numOfShots());
+		}
+		return stats;
+	}
+
+	//statistics of a run: shots per game and nanoseconds per move
+	public static class Stats {
+		final Histogram shots;
+		final Histogram moveNanos;
+		Stats(){
+			this.shots = new Histogram();
+			this.moveNanos = new Histogram();
+		}
+		void merge(Stats other){
+			this.shots.merge(other.shots);
+			this.moveNanos.merge(other.moveNanos);
+		}
+	}
+
+	//log-linear histogram of non-negative values, about 3% precision,
+	//with the buckets of Metric; it is recorded by one thread
+	static class Histogram {
+		final long[] counts = new long[Metric.BUCKETS];
+		long total;
+		long sum;
+		long max;
+
+		void record(long v){
+			this.counts[Metric.bucket(Math.max(0, v))]++;
+			this.total++;
+			this.sum += v;
+			this.max = Math.max(this.max, v);
+		}
+		void merge(Histogram other){
+			for(int i = 0; i < this.counts.length; i++)
+				this.counts[i] += other.counts[i];
+			this.total += other.total;
+			this.sum += other.sum;
+			this.max = Math.max(this.max, other.max);
+		}
+		double mean(){
+			return this.total == 0 ? 0 : (double) this.sum / this.total;
+		}
+		//lowest value of the bucket holding the given percentile
+		long percentile(double p){
+			long rank = (long) Math.ceil(p / 100 * this.total);
+			long seen = 0;
+			for(int i = 0; i < this.counts.length; i++){
+				seen += this.counts[i];
+				if(seen >= rank && seen > 0)
+					return Metric.lowest(i);
+			}
+			return this.max;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int games = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+		int size = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		String strategy = args.length > 2 ? args[2] : "smart";
+		int threads = args.length > 3 ? Integer.parseInt(args[3])
+				: Runtime.getRuntime().availableProcessors();
+		long cacheBytes = args.length > 4 ? Long.parseLong(args[4]) << 20 : DEFAULT_CACHE_BYTES;
+
+		long start = System.nanoTime();
+		Simulator simulator = new Simulator(games, size, strategy, threads);
+		simulator.setCacheBytes(cacheBytes);
+		Stats stats = simulator.run();
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		System.out.printf("%d games of %s on %dx%d, %d threads, %.2f s (%.0f games/s)%n",
+				games, strategy, size, size, threads, seconds, games / seconds);
+		Histogram s = stats.shots;
+		System.out.printf("shots to win: mean %.2f, min %d, p50 %d, p90 %d, p99 %d, max %d%n",
+				s.mean(), s.percentile(0), s.percentile(50), s.percentile(90),
+				s.percentile(99), s.max);
+		Histogram m = stats.moveNanos;
+		System.out.printf("move latency (ns): mean %.0f, p50 %d, p90 %d, p99 %d, p99.9 %d, max %d%n",
+				m.mean(), m.percentile(50), m.percentile(90), m.percentile(99),
+				m.percentile(99.9), m.max);
+		PositionCache c = simulator.cache;
+		if(c != null && c.hits() + c.misses() > 0)
+			System.out.printf("position cache: %d hits in %d lookups (%.1f%%), %d positions%n",
+					c.hits(), c.hits() + c.misses(), 100.0 * c.hits() / (c.hits() + c.misses()),
+					c.capacity());
+	}
+}
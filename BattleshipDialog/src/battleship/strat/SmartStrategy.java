@@ -3,68 +3,176 @@
  * @author Pedro Barragan
  * @author Ulises Martinez
  * This class implements the strategy that the computer
- * will use to play against the user. It implements a 
- * stack that will contain possible successful hits for 
- * the computer to sink a boat as soon as it hits any 
+ * will use to play against the user. It implements a
+ * stack that will contain possible successful hits for
+ * the computer to sink a boat as soon as it hits any
  * place that is part of a boat
+ * A shot is encoded as (x-1)*size + (y-1). Shots already made
+ * are kept in a bitset and random shots are drawn from a lazily
+ * shuffled permutation of the untried places, so every move
+ * takes constant time without boxing.
+ * Until the first hit it plays the moves of the opening book.
  */
 
 package battleship.strat;
 
-import java.util.List;
-import java.util.LinkedList;
-import java.util.Stack;
+import java.util.BitSet;
+import java.util.Random;
 
-public class SmartStrategy {
-	Stack<Integer> moves;
-	List<Integer> history;
+import battleship.model.Ship;
+
+public class SmartStrategy implements Strategy {
+	//pending target moves, used as a stack
+	int[] moves;
+	int top;
+	//places already shot
+	BitSet history;
+	//places pushed on the stack, so each is pushed at most once
+	BitSet queued;
+	//permutation of all places; order[next..] are not drawn yet
+	int[] order;
+	int next;
+	Random random;
 	int size;
+	//opening moves, or null
+	OpeningBook book = OpeningBook.shared();
+	//shot returned by nextShot and not reported yet, or -1
+	int chosen = -1;
 	public SmartStrategy(int size){
-		this.moves = new Stack<Integer>();
-		this.history = new LinkedList<Integer>();
+		this(size, new Random());
+	}
+	public SmartStrategy(int size, Random random){
+		int n = size*size;
+		this.moves = new int[n];
+		this.history = new BitSet(n);
+		this.queued = new BitSet(n);
+		this.order = new int[n];
+		for(int i = 0; i < n; i++)
+			this.order[i] = i;
+		this.random = random;
 		this.size= size;
 	}
+	//draw the next untried place of a lazily shuffled permutation
 	void shootRandom(){
-		int random = (int)(Math.random()*this.size*this.size)+1;
-		if(!history.contains(random))
-			this.moves.push(random);
-		else
-			shootRandom();
+		while(this.next < this.order.length){
+			int j = this.next + this.random.nextInt(this.order.length - this.next);
+			int pick = this.order[j];
+			this.order[j] = this.order[this.next];
+			this.order[this.next++] = pick;
+			if(!history.get(pick)){
+				push(pick);
+				return;
+			}
+		}
 	}
+	//the next shot, or -1 if every place was shot
 	int checkShot(){
-		//printHistory();
-		//System.out.println(this.moves.toString());
-		if(this.moves.isEmpty())
+		//drop targets that were shot in the meantime
+		while(this.top > 0 && history.get(this.moves[this.top-1]))
+			this.top--;
+		if(this.top == 0)
 			shootRandom();
-		return this.moves.peek();
+		return this.top == 0 ? -1 : this.moves[this.top-1];
 	}
 	int doShot(){
-		int shot = moves.pop();
-		this.history.add(shot);
+		int shot = this.moves[--this.top];
+		this.history.set(shot);
 		return shot;
 	}
 	void notifyHit(int place){
-		//moves.removeAllElements();
-		//push some moves
-		int[] next = {place+1, place-1, place + this.size, place-this.size};
-		for(int i = 0; i < next.length; i++)
-			if(isValid(next[i]))
-				moves.push(next[i]);
+		//push the neighbors of the hit place, without wrapping around rows
+		int x = place/this.size;
+		int y = place%this.size;
+		if(y+1 < this.size)
+			pushIfValid(place+1);
+		if(y > 0)
+			pushIfValid(place-1);
+		if(x+1 < this.size)
+			pushIfValid(place+this.size);
+		if(x > 0)
+			pushIfValid(place-this.size);
 	}
 	void notifySunk(){
-		moves.removeAllElements();
+		this.top = 0;
+		this.queued.clear();
+	}
+	//play the moves of the given book, or none if null
+	public void setBook(OpeningBook book){
+		this.book = book;
+	}
+	//Strategy: the places it uses are transposed shots
+	public int nextShot(Observation observation, long deadline){
+		int place = this.book == null ? -1 : this.book.move(observation);
+		if(place >= 0){
+			this.chosen = transpose(place, this.size);
+			this.history.set(this.chosen);
+			return place;
+		}
+		if(checkShot() < 0){
+			this.chosen = -1;
+			return -1;
+		}
+		this.chosen = doShot();
+		return transpose(this.chosen, this.size);
+	}
+	public void hit(int place){
+		notifyHit(shot(place));
+	}
+	public void miss(int place){
+		shot(place);
+	}
+	public void sunk(int place, Ship ship){
+		shot(place);
+		notifySunk();
+	}
+	//record the shot at the reported place; a chosen place already shot
+	//is reported first, so if another place is reported, the chosen one
+	//was not shot and is still to be shot
+	int shot(int place){
+		int shot = transpose(place, this.size);
+		if(this.chosen >= 0 && this.chosen != shot){
+			this.history.clear(this.chosen);
+			this.queued.clear(this.chosen);
+			undraw(this.chosen);
+		}
+		this.chosen = -1;
+		this.history.set(shot);
+		return shot;
+	}
+	//put a drawn place back among the places not drawn yet
+	void undraw(int shot){
+		for(int j = 0; j < this.next; j++){
+			if(this.order[j] == shot){
+				this.order[j] = this.order[--this.next];
+				this.order[this.next] = shot;
+				return;
+			}
+		}
+	}
+	//turn a shot (x-1)*size + (y-1) into a place (y-1)*size + (x-1),
+	//and back
+	static int transpose(int i, int size){
+		return (i%size)*size + i/size;
+	}
+	//start a new game without allocating; the permutation is reused,
+	//as drawing from it again shuffles it anew
+	public void reset(){
+		this.top = 0;
+		this.next = 0;
+		this.chosen = -1;
+		this.history.clear();
+		this.queued.clear();
 	}
 	boolean isValid(int check){
-		boolean valid = true;
-		if(check >=100 || check <0)
-			valid = false;
-		return valid && !history.contains(check);
-	}
-	void printHistory(){
-		System.out.print("[");
-		for(int i = 0; i < this.history.size(); i++){
-			System.out.print(this.history.get(i) + ", ");
+		return check >= 0 && check < this.size*this.size && !history.get(check);
+	}
+	void pushIfValid(int check){
+		if(isValid(check) && !this.queued.get(check)){
+			this.queued.set(check);
+			push(check);
 		}
-		System.out.println("]");
+	}
+	void push(int shot){
+		this.moves[this.top++] = shot;
 	}
 }
@@ -0,0 +1,48 @@
+/*
+ * This class is an observation frozen at the time it is taken: the
+ * states of the places, the ships afloat and the hash of a board are
+ * copied, so a strategy may think about it on another thread while
+ * the board goes on changing, or is only changed on its own thread.
+ */
+
+package battleship.strat;
+
+import battleship.model.Board;
+
+public class SnapshotObservation implements Observation {
+	int size;
+	int numOfShots;
+	byte[] states;
+	int[] remaining;
+	long zobrist;
+
+	//a snapshot of the given board, to be taken on the thread that
+	//changes it
+	public SnapshotObservation(Board board){
+		this(new BoardObservation(board));
+	}
+	public SnapshotObservation(Observation observation){
+		this.size = observation.size();
+		this.numOfShots = observation.numOfShots();
+		this.states = new byte[this.size*this.size];
+		for(int c = 0; c < this.states.length; c++)
+			this.states[c] = (byte) observation.state(c);
+		this.remaining = observation.remainingShips();
+		this.zobrist = observation.zobrist();
+	}
+	public int size(){
+		return this.size;
+	}
+	public int numOfShots(){
+		return this.numOfShots;
+	}
+	public int state(int place){
+		return this.states[place];
+	}
+	public int[] remainingShips(){
+		return this.remaining.clone();
+	}
+	public long zobrist(){
+		return this.zobrist;
+	}
+}
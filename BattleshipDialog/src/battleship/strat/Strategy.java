@@ -0,0 +1,54 @@
+/*
+ * This interface is how the computer's strategies are played, so
+ * that they can be driven, timed and swapped without the aspects or
+ * the server knowing which one plays; see StrategyRunner.
+ * A strategy chooses the next place to shoot by a deadline, and is
+ * then told the outcome of that shot. If the place chosen was already
+ * shot, its outcome is told first, then that of the place shot
+ * instead; a place chosen out of the board is not told. Places are indexed
+ * (y-1)*size + (x-1), as in Observation. A strategy that searches
+ * is expected to return its best answer so far once the deadline,
+ * a System.nanoTime() value, is reached.
+ */
+
+package battleship.strat;
+
+import java.util.Random;
+
+import battleship.model.Board;
+import battleship.model.Ship;
+
+public interface Strategy {
+	//choose the next place to shoot, among the places not shot yet
+	int nextShot(Observation observation, long deadline);
+	//the last place chosen was a hit on a ship that is not sunk
+	void hit(int place);
+	//the last place chosen was a miss
+	void miss(int place);
+	//the last place chosen sank the given ship
+	void sunk(int place, Ship ship);
+	//forget the current game and start a new one on the same board
+	void reset();
+
+	//create the strategy of the given name, smart, density or
+	//montecarlo, to play against the given board
+	static Strategy create(String name, Board board, Random random){
+		return create(name, board, random, null);
+	}
+	//the same, keeping evaluated positions in the given cache, which
+	//may be shared by strategies playing boards of the same size
+	static Strategy create(String name, Board board, Random random, PositionCache cache){
+		switch(name){
+		case "density":
+			DensityStrategy density = new DensityStrategy(board.size(), board.ships(), random);
+			density.setCache(cache);
+			return density;
+		case "montecarlo":
+			MonteCarloStrategy montecarlo = new MonteCarloStrategy(board);
+			montecarlo.setCache(cache);
+			return montecarlo;
+		default:
+			return new SmartStrategy(board.size(), random);
+		}
+	}
+}
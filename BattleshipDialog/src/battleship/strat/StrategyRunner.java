@@ -0,0 +1,146 @@
+/*
+ * This class plays a strategy against a board: it asks the strategy
+ * for a shot with a deadline, makes the shot and reports its outcome
+ * back. It records how long the decisions take, their think time,
+ * and counts the decisions that overran their budget; the think time
+ * of every decision can also be recorded into a histogram. A shot out of the
+ * board or at a place already shot is not made; the next place not
+ * shot is used instead and counted as a fallback, so a faulty or
+ * late strategy never stalls a game. A place already shot, e.g., by
+ * another shooter, is first reported to the strategy as it is, so
+ * the strategy does not choose it again.
+ * A move can also be split in two: decide chooses the shot and play
+ * makes it, so the decision can be taken on another thread than the
+ * one that shoots, on a SnapshotObservation of the board taken by the
+ * thread that shoots.
+ */
+
+package battleship.strat;
+
+import battleship.model.Board;
+import battleship.model.Place;
+import battleship.model.Ship;
+
+public class StrategyRunner {
+	//default time budget of a move
+	public static final long DEFAULT_BUDGET_NANOS = 20_000_000L;
+
+	Strategy strategy;
+	Board board;
+	Observation observation;
+	long budgetNanos;
+	long moves;
+	long totalThinkNanos;
+	long maxThinkNanos;
+	long lastThinkNanos;
+	long overruns;
+	long fallbacks;
+	//think time of every move, or null
+	Simulator.Histogram thinkNanos;
+
+	public StrategyRunner(Strategy strategy, Board board){
+		this(strategy, board, DEFAULT_BUDGET_NANOS);
+	}
+	public StrategyRunner(Strategy strategy, Board board, long budgetNanos){
+		this.strategy = strategy;
+		this.board = board;
+		this.observation = new BoardObservation(board);
+		this.budgetNanos = budgetNanos;
+	}
+
+	//make one move and return the place shot
+	public Place move(){
+		return play(decide());
+	}
+	//choose the place of the next move without shooting it
+	public int decide(){
+		return decide(this.observation);
+	}
+	//the same, seeing the board as the given observation of it
+	public int decide(Observation observation){
+		long start = System.nanoTime();
+		int shot = this.strategy.nextShot(observation, start + this.budgetNanos);
+		long think = System.nanoTime() - start;
+		this.moves++;
+		this.lastThinkNanos = think;
+		this.totalThinkNanos += think;
+		this.maxThinkNanos = Math.max(this.maxThinkNanos, think);
+		if(this.thinkNanos != null)
+			this.thinkNanos.record(think);
+		if(think > this.budgetNanos)
+			this.overruns++;
+		return shot;
+	}
+	//shoot the place chosen by decide and return the place shot; a
+	//place already shot is reported as it is, and the next place not
+	//shot is used instead, as it is for a place out of the board
+	public Place play(int shot){
+		Place place = at(shot);
+		if(place == null || place.isHit()){
+			this.fallbacks++;
+			if(place != null)
+				report(place);
+			place = firstNotShot(Math.max(shot, 0));
+		}
+		this.board.hit(place);
+		report(place);
+		return place;
+	}
+	//tell the strategy the outcome of the shot at the given place
+	void report(Place place){
+		int shot = (place.getY()-1)*this.board.size() + place.getX()-1;
+		if(place.isEmpty())
+			this.strategy.miss(shot);
+		else{
+			Ship ship = place.ship();
+			if(ship.isSunk())
+				this.strategy.sunk(shot, ship);
+			else
+				this.strategy.hit(shot);
+		}
+	}
+	Place at(int shot){
+		int size = this.board.size();
+		return shot >= 0 && shot < size*size ? this.board.at(shot%size+1, shot/size+1) : null;
+	}
+	Place firstNotShot(int from){
+		int n = this.board.size()*this.board.size();
+		for(int k = 0; k < n; k++){
+			Place p = at((from + k) % n);
+			if(!p.isHit())
+				return p;
+		}
+		throw new IllegalStateException("Every place was shot");
+	}
+
+	//start a new game; the statistics are kept
+	public void reset(){
+		this.strategy.reset();
+	}
+	public Strategy strategy(){
+		return this.strategy;
+	}
+	//record the think time of every following move into the histogram
+	void recordInto(Simulator.Histogram histogram){
+		this.thinkNanos = histogram;
+	}
+	public long moves(){
+		return this.moves;
+	}
+	public long overruns(){
+		return this.overruns;
+	}
+	public long fallbacks(){
+		return this.fallbacks;
+	}
+	public double meanThinkNanos(){
+		return this.moves == 0 ? 0 : (double) this.totalThinkNanos / this.moves;
+	}
+	public long maxThinkNanos(){
+		return this.maxThinkNanos;
+	}
+	//think time of the last move
+	public long lastThinkNanos(){
+		return this.lastThinkNanos;
+	}
+}
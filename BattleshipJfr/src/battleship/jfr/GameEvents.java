@@ -0,0 +1,117 @@
+/*
+ * This class holds the Java Flight Recorder events of the game, so a
+ * recording shows games, shots and the computer's think time next to
+ * GC pauses and stalls of the event thread. Every event carries the
+ * size of the board and the strategy in use: the class of the
+ * strategy shooting the board, or "player" for a board shot by the
+ * user. They are emitted by FlightRecorderAspect, and cost next to
+ * nothing while no recording is running.
+ * The jdk.jfr API is not part of Java SE 8, which the game targets, so
+ * the events and their aspect are a module of their own, built for
+ * JDK 11 and later and woven into the game's classes.
+ */
+
+package battleship.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+public final class GameEvents {
+
+	private GameEvents(){
+	}
+
+	@Category("Battleship")
+	abstract static class GameEvent extends Event {
+		@Label("Board Size")
+		int boardSize;
+		@Label("Strategy")
+		String strategy;
+
+		void set(int boardSize, String strategy){
+			this.boardSize = boardSize;
+			this.strategy = strategy;
+		}
+	}
+
+	@Name("battleship.GameStart")
+	@Label("Game Start")
+	@Description("A new game was started")
+	public static class GameStart extends GameEvent {
+	}
+
+	@Name("battleship.FleetPlaced")
+	@Label("Fleet Placed")
+	@Description("The fleet of a board was placed at random")
+	public static class FleetPlaced extends GameEvent {
+		@Label("Attempts")
+		@Description("Placement attempts, restarts included")
+		int attempts;
+
+		void set(int boardSize, String strategy, int attempts){
+			set(boardSize, strategy);
+			this.attempts = attempts;
+		}
+	}
+
+	@Name("battleship.Shot")
+	@Label("Shot")
+	@Description("A place was shot; the duration is that of the shot, listeners included")
+	public static class Shot extends GameEvent {
+		@Label("X")
+		int x;
+		@Label("Y")
+		int y;
+		@Label("Outcome")
+		String outcome;
+		@Label("Shot Number")
+		int shotNumber;
+		@Label("Decision Latency")
+		@Description("Time the strategy took to choose the shot, 0 for the player")
+		@Timespan(Timespan.NANOSECONDS)
+		long decisionNanos;
+
+		void set(int boardSize, String strategy, int x, int y, String outcome, int shotNumber, long decisionNanos){
+			set(boardSize, strategy);
+			this.x = x;
+			this.y = y;
+			this.outcome = outcome;
+			this.shotNumber = shotNumber;
+			this.decisionNanos = decisionNanos;
+		}
+	}
+
+	@Name("battleship.ShipSunk")
+	@Label("Ship Sunk")
+	public static class ShipSunk extends GameEvent {
+		@Label("Ship")
+		String ship;
+		@Label("Length")
+		int length;
+		@Label("Shot Number")
+		int shotNumber;
+
+		void set(int boardSize, String strategy, String ship, int length, int shotNumber){
+			set(boardSize, strategy);
+			this.ship = ship;
+			this.length = length;
+			this.shotNumber = shotNumber;
+		}
+	}
+
+	@Name("battleship.GameOver")
+	@Label("Game Over")
+	public static class GameOver extends GameEvent {
+		@Label("Shots")
+		int shots;
+
+		void set(int boardSize, String strategy, int shots){
+			set(boardSize, strategy);
+			this.shots = shots;
+		}
+	}
+}